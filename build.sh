@@ -11,4 +11,14 @@ mkdir  $BLD_DIR
 cd $SRC_DIR
 CP=`find $LIB_DIR -name '*.jar' | awk -v ORS=':' '{print}'`
 FP=`find . -name '*.java'`
-javac -Xlint:deprecation -classpath "$CP." -d $BLD_DIR $FP && echo "[OK] Build."
+
+#  the vector kernel is only built when jdk.incubator.vector is available
+if java --list-modules 2>/dev/null | grep -q '^jdk.incubator.vector'
+then
+    OPTS="--add-modules jdk.incubator.vector"
+else
+    OPTS=""
+    FP=`echo "$FP" | grep -v 'VectorForceKernel.java'`
+fi
+
+javac -Xlint:deprecation $OPTS -classpath "$CP." -d $BLD_DIR $FP && echo "[OK] Build."
@@ -10,6 +10,7 @@ import rescuecore2.messages.control.*;
 import rescuecore2.misc.geometry.*;
 
 import traffic.body.*;
+import traffic.body.path.*;
 import traffic.view.*;
 import traffic.util.*;
 
@@ -39,6 +40,19 @@ public class Simulator extends StandardSimulator implements GUIComponent
                 this.model));
     }
 
+    //  the changes of the kernel are only seen here, as the change set given
+    //  to processCommands is the empty one to be sent back
+    @Override
+    protected void handleUpdate(KSUpdate update)
+    {
+        super.handleUpdate(update);
+
+        ChangeSet changes = update.getChangeSet();
+        this.shapeManager.update(changes);
+        this.cellManager.update(changes, this.model);
+        this.agentActionManager.update(changes, this.model);
+    }
+
     private int count = 0;
 
     @Override
@@ -46,20 +60,23 @@ public class Simulator extends StandardSimulator implements GUIComponent
         KSCommands ksCommands,
         ChangeSet changes)
     {
-        this.shapeManager.update(changes);
-        this.cellManager.update(changes, this.model);
-        this.agentActionManager.update(changes, this.model);
+        this.agentActionManager.updateAgents(this.model);
         if (++count == 5)
         {
             this.shapeManager.initTest(this.model);
             //this.cellManager.initTest(this.model);
         }
 
-        for (Command command : ksCommands.getCommands())
+        //  moves are planned up front and applied in command order
+        List<Command> commands = ksCommands.getCommands();
+        List<List<PathElement>> plans = this.planMoves(commands);
+        int moves = 0;
+
+        for (Command command : commands)
         {
             if (command instanceof AKMove)
             {
-                this.handleMove((AKMove)command);
+                this.handleMove((AKMove)command, plans.get(moves++));
             }
             else
             if (command instanceof AKLoad)
@@ -93,18 +110,35 @@ public class Simulator extends StandardSimulator implements GUIComponent
         return this.view.getName();
     }
 
-    private void handleMove(AKMove akMove)
+    private List<List<PathElement>> planMoves(List<Command> commands)
     {
-        EntityID agent = akMove.getAgentID();
-        List<EntityID> path = new ArrayList<>(akMove.getPath());
+        List<EntityID> agents = new ArrayList<>();
+        List<List<EntityID>> paths = new ArrayList<>();
+        List<Point2D> dests = new ArrayList<>();
+
+        for (Command command : commands)
+        {
+            if (!(command instanceof AKMove)) continue;
+            AKMove akMove = (AKMove)command;
+
+            int x = akMove.getDestinationX();
+            int y = akMove.getDestinationY();
 
-        int x = akMove.getDestinationX();
-        int y = akMove.getDestinationY();
+            Point2D dest = new Point2D(x, y);
+            if (x < 0 || y < 0) dest = null;
 
-        Point2D dest = new Point2D(x, y);
-        if (x < 0 || y < 0) dest = null;
+            agents.add(akMove.getAgentID());
+            paths.add(new ArrayList<>(akMove.getPath()));
+            dests.add(dest);
+        }
+
+        return this.agentActionManager.planMoves(agents, paths, dests, this.model);
+    }
 
-        this.agentActionManager.moveAgent(agent, path, dest, this.model);
+    private void handleMove(AKMove akMove, List<PathElement> plan)
+    {
+        EntityID agent = akMove.getAgentID();
+        this.agentActionManager.applyMove(agent, plan);
     }
 
     private void handleLoad(AKLoad akLoad)
@@ -21,6 +21,9 @@ import java.util.stream.*;
 public class AgentActionManager
 {
     private CellManager cellManager;
+    private WallIndex wallIndex;
+    private AreaIndex areaIndex;
+    private PlanCache planCache;
     private Map<EntityID, Agent> agents;
 
     public AgentActionManager(
@@ -28,13 +31,20 @@ public class AgentActionManager
         StandardWorldModel model)
     {
         this.cellManager = cellManager;
+        this.wallIndex = new WallIndex(Environment.WALL_DISTANCE_CUTOFF, model);
+        this.areaIndex = new AreaIndex(Environment.AREA_INDEX_CELL_SIZE, model);
+        this.planCache = new PlanCache(Environment.PLAN_CACHE_SIZE);
         this.agents = makeWrappedObjects(model);
     }
 
     public void update(ChangeSet changes, StandardWorldModel model)
     {
         this.cellManager.update(changes, model);
+        this.wallIndex.update(changes, model);
+    }
 
+    public void updateAgents(StandardWorldModel model)
+    {
         synchronized (this.agents)
         {
         for (Agent agent : this.agents.values())
@@ -42,12 +52,108 @@ public class AgentActionManager
         }
     }
 
-    public void moveAgent(EntityID agentID, List<EntityID> path, Point2D dest, StandardWorldModel model)
+    //  plans the moves of a timestep before any of them is applied
+    //  planning only reads agents, cells and junctions, so the paths are
+    //  resolved and those of every path are made first, and the moves are
+    //  then planned on the worker pool
+    public List<List<PathElement>> planMoves(
+        List<EntityID> agentIDs,
+        List<List<EntityID>> paths,
+        List<Point2D> dests,
+        StandardWorldModel model)
     {
-        AgentLog.debug(agentID, "try to execute MOVE command");
+        int n = agentIDs.size();
+        List<List<PathElement>> retval = new ArrayList<>(Collections.nCopies(n, null));
 
-        synchronized (this.agents)
+        if (!Environment.PARALLEL_PLANNING)
         {
+            for (int i=0; i<n; ++i)
+                retval.set(i, this.planMove(agentIDs.get(i), paths.get(i), dests.get(i), model));
+            return retval;
+        }
+
+        for (int i=0; i<n; ++i) this.prepareMove(agentIDs.get(i), paths.get(i), model);
+
+        WorkerPool.forEach(n, i -> retval.set(
+            i, this.planResolvedMove(agentIDs.get(i), paths.get(i), dests.get(i), model)));
+
+        return retval;
+    }
+
+    //  path elements of a move, or null if the move cannot be executed
+    public List<PathElement> planMove(
+        EntityID agentID,
+        List<EntityID> path,
+        Point2D dest,
+        StandardWorldModel model)
+    {
+        Agent agent = this.agents.get(agentID);
+        if (agent == null || !agent.canMove()) return null;
+
+        this.resolvePath(agent, path, model);
+        return this.planResolvedMove(agentID, path, dest, model);
+    }
+
+    private List<PathElement> planResolvedMove(
+        EntityID agentID,
+        List<EntityID> path,
+        Point2D dest,
+        StandardWorldModel model)
+    {
+        Agent agent = this.agents.get(agentID);
+        if (agent == null || !agent.canMove()) return null;
+
+        EntityID position = agent.unwrap().getPosition();
+        correctPath(position, path);
+
+        Map<EntityID, List<Cell>> areaCells = new HashMap<>();
+        for (EntityID id : path)
+        {
+            if (!(model.getEntity(id) instanceof Area)) return null;
+            areaCells.put(id, this.cellManager.computeCells(id, model));
+        }
+        for (int i=0; i<path.size()-1; ++i)
+            this.cellManager.computeJunctions(path.get(i), path.get(i+1), model);
+
+        if (dest == null)
+        {
+            EntityID id = path.get(path.size()-1);
+            Area area = (Area)model.getEntity(id);
+            dest = new Point2D((double)area.getX(), (double)area.getY());
+        }
+
+        //  the plan only depends on the start cell, so a cached plan of the
+        //  same move is reused as long as the cells of its areas are unchanged
+        int start = PathPlanning.seekStartingNode(agent.getXY(), areaCells.get(position));
+        int[] versions = path
+            .stream()
+            .mapToInt(i -> this.cellManager.getVersion(i))
+            .toArray();
+
+        List<PathElement> retval = start < 0 ? null
+            : this.planCache.get(start, path, dest, versions, agent.getXY());
+        if (retval == null)
+        {
+            CellGraph graph = this.cellManager.getGraph();
+            List<PathElement> elements =
+                PathPlanning.run(agent, path, areaCells, graph, dest, model);
+            List<PathElement> smoothed = Environment.PATH_SMOOTHING
+                ? PathSmoothing.run(elements) : null;
+            if (start >= 0)
+                this.planCache.put(start, path, dest, versions, elements, smoothed);
+
+            retval = smoothed != null ? smoothed : elements;
+        }
+
+        return retval;
+    }
+
+    //  the move is checked again, as commands applied before it may have
+    //  restricted the agent since it was planned
+    public void applyMove(EntityID agentID, List<PathElement> elems)
+    {
+        AgentLog.debug(agentID, "try to execute MOVE command");
+
         if (!this.agents.containsKey(agentID))
         {
             AgentLog.error(agentID, "is not a human");
@@ -62,33 +168,82 @@ public class AgentActionManager
             return;
         }
 
-        //  correct path
-        EntityID position = agent.unwrap().getPosition();
-        if (path.isEmpty() || !position.equals(path.get(0)))
+        if (elems == null) return;
+
+        AgentLog.debug(agentID, "execute MOVE command");
+        synchronized (this.agents)
         {
-            path.add(0, position);
+            agent.setPath(elems);
         }
+    }
+
+    private void prepareMove(EntityID agentID, List<EntityID> path, StandardWorldModel model)
+    {
+        Agent agent = this.agents.get(agentID);
+        if (agent == null || !agent.canMove()) return;
+
+        this.resolvePath(agent, path, model);
+        for (int i=0; i<path.size(); ++i)
+        {
+            if (!(model.getEntity(path.get(i)) instanceof Area)) return;
+
+            this.cellManager.computeCells(path.get(i), model);
+            if (i > 0)
+                this.cellManager.computeJunctions(path.get(i-1), path.get(i), model);
+        }
+    }
+
+    //  with hierarchical planning the path is repaired around areas whose
+    //  cells do not lead on from where they are entered, and the cell level
+    //  search then stays in the repaired corridor
+    private void resolvePath(Agent agent, List<EntityID> path, StandardWorldModel model)
+    {
+        correctPath(agent.unwrap().getPosition(), path);
+        if (!Environment.HIERARCHICAL_PLANNING) return;
 
-        //  execute command
-        Map<EntityID, List<Cell>> areaCells = new HashMap<>();
         for (EntityID id : path)
         {
             if (!(model.getEntity(id) instanceof Area)) return;
-            areaCells.put(id, this.cellManager.computeCells(id, model));
         }
 
-        if (dest == null)
+        List<EntityID> repaired = AreaPlanning.repair(
+            path, agent.getXY(), this.makeAreas(model), model,
+            Environment.AREA_PLANNING_LIMIT);
+
+        path.clear();
+        path.addAll(repaired);
+    }
+
+    private AreaPlanning.Areas makeAreas(StandardWorldModel model)
+    {
+        CellManager cellManager = this.cellManager;
+        return new AreaPlanning.Areas()
         {
-            EntityID id = path.get(path.size()-1);
-            Area area = (Area)model.getEntity(id);
-            dest = new Point2D((double)area.getX(), (double)area.getY());
-        }
+            @Override
+            public boolean hasCells(EntityID id)
+            {
+                return cellManager.hasCells(id);
+            }
 
-        Map<EntityID, List<Cell>> neededCells = Cell.updateNeighbourJunctions(areaCells, path);
-        List<PathElement> elems = PathPlanning.run(agent, path, neededCells, dest, model);
+            @Override
+            public List<Cell> computeCells(EntityID id)
+            {
+                return cellManager.computeCells(id, model);
+            }
 
-        AgentLog.debug(agentID, "execute MOVE command");
-        agent.setPath(elems);
+            @Override
+            public AreaJunctions computeJunctions(EntityID id1, EntityID id2)
+            {
+                return cellManager.computeJunctions(id1, id2, model);
+            }
+        };
+    }
+
+    private static void correctPath(EntityID position, List<EntityID> path)
+    {
+        if (path.isEmpty() || !position.equals(path.get(0)))
+        {
+            path.add(0, position);
         }
     }
 
@@ -184,7 +339,7 @@ public class AgentActionManager
 
         for (Agent agent : this.agents.values())
         {
-            agent.reflect(ret, model);
+            agent.reflect(ret, this.areaIndex);
         }
 
         return ret;
@@ -211,7 +366,7 @@ public class AgentActionManager
 
     private void decideOnMovement(StandardWorldModel model)
     {
-        Time.run(this.agents.values(), model);
+        Time.run(this.agents.values(), this.wallIndex, model);
     }
 
     public void paint(Graphics2D g, AffineTransform transform)
@@ -18,11 +18,15 @@ public class CellManager
 {
     private PassableShapeManager passableShapeManager;
     private Map<EntityID, List<Cell>> areaCells;
+    private Map<EntityID, Integer> versions;
+    private CellGraph graph;
 
     public CellManager(PassableShapeManager passableShapeManager)
     {
         this.passableShapeManager = passableShapeManager;
         this.areaCells = new HashMap<>();
+        this.versions = new HashMap<>();
+        this.graph = new CellGraph();
     }
 
     public List<Cell> computeCells(EntityID id, StandardWorldModel model)
@@ -33,17 +37,56 @@ public class CellManager
         return this.areaCells.get(id);
     }
 
+    public boolean hasCells(EntityID id)
+    {
+        return this.areaCells.containsKey(id);
+    }
+
+    //  junctions between the cells of two areas, computed once per pair
+    public AreaJunctions computeJunctions(EntityID id1, EntityID id2, StandardWorldModel model)
+    {
+        AreaJunctions retval = this.graph.get(id1, id2);
+        if (retval != null) return retval;
+
+        return this.graph.compute(
+            id1, this.computeCells(id1, model),
+            id2, this.computeCells(id2, model));
+    }
+
+    public CellGraph getGraph()
+    {
+        return this.graph;
+    }
+
+    //  counter bumped whenever the cells of an area are invalidated
+    public int getVersion(EntityID id)
+    {
+        return this.versions.getOrDefault(id, 0);
+    }
+
     public void update(ChangeSet changes, StandardWorldModel model)
     {
         this.passableShapeManager.update(changes);
 
+        //  areas whose blockades were removed are no longer referred to by
+        //  any changed blockade
+        String blockades = StandardPropertyURN.BLOCKADES.toString();
+        changes.getChangedEntities()
+            .stream()
+            .filter(i -> model.getEntity(i) instanceof Area)
+            .filter(i -> changes.getChangedProperty(i, blockades) != null)
+            .forEach(i -> {
+                this.invalidate(i);
+                ((Area)model.getEntity(i)).getNeighbours().forEach(this::invalidate);
+            });
+
         changes.getChangedEntities()
             .stream()
             .map(i -> model.getEntity(i))
             .filter(e -> e instanceof Blockade)
             .map(e -> (Blockade)e)
             .map(Blockade::getPosition)
-            .forEach(i -> this.areaCells.remove(i));
+            .forEach(i -> this.invalidate(i));
 
         changes.getChangedEntities()
             .stream()
@@ -54,7 +97,14 @@ public class CellManager
             .map(i -> model.getEntity(i))
             .map(e -> (Area)e)
             .flatMap(a -> a.getNeighbours().stream())
-            .forEach(i -> this.areaCells.remove(i));
+            .forEach(i -> this.invalidate(i));
+    }
+
+    private void invalidate(EntityID id)
+    {
+        this.areaCells.remove(id);
+        this.graph.invalidate(id);
+        this.versions.merge(id, 1, Integer::sum);
     }
 
     private static List<Cell> makeAreaCell(
@@ -0,0 +1,145 @@
+package traffic.body.geom;
+
+import rescuecore2.worldmodel.*;
+import rescuecore2.standard.entities.*;
+
+import java.util.*;
+
+//  point location over area outlines built once at connect time
+//  every area is registered in the grid cells its bounding box covers, and a
+//  point is only tested against the areas of its cell, first by bounding box
+//  and then by an even-odd crossing test on the primitive outline
+public class AreaIndex
+{
+    private double size;
+
+    private EntityID[] ids;
+    private int[][] outlines;
+    private int[] minXs;
+    private int[] minYs;
+    private int[] maxXs;
+    private int[] maxYs;
+
+    private Map<Long, int[]> cells;
+
+    public AreaIndex(double size, StandardWorldModel model)
+    {
+        this.size = size;
+
+        List<Area> areas = new ArrayList<>();
+        for (StandardEntity entity : model)
+        {
+            if (!(entity instanceof Area)) continue;
+
+            Area area = (Area)entity;
+            if (area.isEdgesDefined() && area.getApexList().length >= 6)
+                areas.add(area);
+        }
+
+        int n = areas.size();
+        this.ids = new EntityID[n];
+        this.outlines = new int[n][];
+        this.minXs = new int[n];
+        this.minYs = new int[n];
+        this.maxXs = new int[n];
+        this.maxYs = new int[n];
+
+        Map<Long, List<Integer>> lists = new HashMap<>();
+        for (int i=0; i<n; ++i)
+        {
+            this.register(i, areas.get(i));
+
+            int cx1 = this.toCell(this.minXs[i]);
+            int cx2 = this.toCell(this.maxXs[i]);
+            int cy1 = this.toCell(this.minYs[i]);
+            int cy2 = this.toCell(this.maxYs[i]);
+
+            for (int cx=cx1; cx<=cx2; ++cx) for (int cy=cy1; cy<=cy2; ++cy)
+            {
+                lists
+                    .computeIfAbsent(toKey(cx, cy), k -> new ArrayList<>())
+                    .add(i);
+            }
+        }
+
+        this.cells = new HashMap<>();
+        for (Map.Entry<Long, List<Integer>> entry : lists.entrySet())
+        {
+            int[] indices = entry.getValue()
+                .stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+            this.cells.put(entry.getKey(), indices);
+        }
+    }
+
+    //  area containing (x, y), or null if there is none
+    public EntityID locate(double x, double y)
+    {
+        int[] indices = this.cells.get(toKey(this.toCell(x), this.toCell(y)));
+        if (indices == null) return null;
+
+        for (int i : indices)
+        {
+            if (x < this.minXs[i] || x > this.maxXs[i]) continue;
+            if (y < this.minYs[i] || y > this.maxYs[i]) continue;
+            if (contains(this.outlines[i], x, y)) return this.ids[i];
+        }
+
+        return null;
+    }
+
+    private void register(int i, Area area)
+    {
+        int[] apexes = area.getApexList();
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int k=0; k<apexes.length; k+=2)
+        {
+            minX = Math.min(minX, apexes[k]);
+            maxX = Math.max(maxX, apexes[k]);
+            minY = Math.min(minY, apexes[k+1]);
+            maxY = Math.max(maxY, apexes[k+1]);
+        }
+
+        this.ids[i] = area.getID();
+        this.outlines[i] = apexes;
+        this.minXs[i] = minX;
+        this.minYs[i] = minY;
+        this.maxXs[i] = maxX;
+        this.maxYs[i] = maxY;
+    }
+
+    //  even-odd rule over the closed outline of x, y pairs
+    private static boolean contains(int[] apexes, double x, double y)
+    {
+        boolean retval = false;
+        int n = apexes.length;
+
+        for (int k=0, l=n-2; k<n; l=k, k+=2)
+        {
+            double x1 = apexes[k];
+            double y1 = apexes[k+1];
+            double x2 = apexes[l];
+            double y2 = apexes[l+1];
+
+            if ((y1 > y) == (y2 > y)) continue;
+            if (x < x1 + (y-y1) * (x2-x1) / (y2-y1)) retval = !retval;
+        }
+
+        return retval;
+    }
+
+    private int toCell(double v)
+    {
+        return (int)Math.floor(v / this.size);
+    }
+
+    private static long toKey(int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xffffffffL);
+    }
+}
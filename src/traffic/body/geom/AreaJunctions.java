@@ -0,0 +1,136 @@
+package traffic.body.geom;
+
+import traffic.util.*;
+
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+
+//  junctions between the cells of two neighbouring areas
+//  for every cell of either area, the numbers of the cells it touches in the
+//  other area and the medians of the touching outlines
+public class AreaJunctions
+{
+    private static final int[] NO_TARGETS = new int[0];
+    private static final Point2D[] NO_POINTS = new Point2D[0];
+
+    private EntityID id1;
+    private EntityID id2;
+
+    private int[][] targets1;
+    private Point2D[][] points1;
+    private int[][] targets2;
+    private Point2D[][] points2;
+
+    public AreaJunctions(
+        EntityID id1,
+        List<Cell> cells1,
+        EntityID id2,
+        List<Cell> cells2)
+    {
+        this.id1 = id1;
+        this.id2 = id2;
+
+        List<Map<Integer, Point2D>> maps1 = makeMaps(cells1.size());
+        List<Map<Integer, Point2D>> maps2 =
+            id1.equals(id2) ? maps1 : makeMaps(cells2.size());
+
+        int j = 0;
+        for (Cell cell1 : cells1)
+        {
+            if (cell1.getNeighbours().contains(id2))
+            {
+                int k = 0;
+                for (Cell cell2 : cells2)
+                {
+                    if (cell2.getNeighbours().contains(id1))
+                        connect(cell1, j, maps1, cell2, k, maps2);
+                    k++;
+                }
+            }
+            j++;
+        }
+
+        this.targets1 = toTargets(maps1);
+        this.points1 = toPoints(maps1);
+        this.targets2 = toTargets(maps2);
+        this.points2 = toPoints(maps2);
+    }
+
+    //  numbers of the cells in the other area touched by a cell of from
+    public int[] getTargets(EntityID from, int num)
+    {
+        int[][] targets = from.equals(this.id1) ? this.targets1 : this.targets2;
+        return num < targets.length ? targets[num] : NO_TARGETS;
+    }
+
+    public Point2D[] getPoints(EntityID from, int num)
+    {
+        Point2D[][] points = from.equals(this.id1) ? this.points1 : this.points2;
+        return num < points.length ? points[num] : NO_POINTS;
+    }
+
+    //  junction from a cell of from to a cell of the other area, or null
+    public Point2D getJunction(EntityID from, int num, int target)
+    {
+        int[] targets = this.getTargets(from, num);
+        for (int i=0; i<targets.length; ++i)
+        {
+            if (targets[i] == target) return this.getPoints(from, num)[i];
+        }
+
+        return null;
+    }
+
+    private static void connect(
+        Cell cell1, int j, List<Map<Integer, Point2D>> maps1,
+        Cell cell2, int k, List<Map<Integer, Point2D>> maps2)
+    {
+        for (Line2D outline1 : cell1.getOutlines())
+        {
+            for (Line2D outline2 : cell2.getOutlines())
+            {
+                Line2D overlapping =
+                    GeomUtil.computeOverlapping(outline1, outline2);
+                if (overlapping == null) continue;
+
+                Point2D median = GeomUtil.makeMedian(overlapping);
+                maps1.get(j).put(k, median);
+                maps2.get(k).put(j, median);
+            }
+        }
+    }
+
+    private static List<Map<Integer, Point2D>> makeMaps(int n)
+    {
+        List<Map<Integer, Point2D>> retval = new ArrayList<>(n);
+        for (int i=0; i<n; ++i) retval.add(new LinkedHashMap<>());
+        return retval;
+    }
+
+    private static int[][] toTargets(List<Map<Integer, Point2D>> maps)
+    {
+        int[][] retval = new int[maps.size()][];
+        for (int i=0; i<retval.length; ++i)
+        {
+            retval[i] = maps.get(i).keySet()
+                .stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+        }
+
+        return retval;
+    }
+
+    private static Point2D[][] toPoints(List<Map<Integer, Point2D>> maps)
+    {
+        Point2D[][] retval = new Point2D[maps.size()][];
+        for (int i=0; i<retval.length; ++i)
+        {
+            retval[i] = maps.get(i).values().toArray(new Point2D[0]);
+        }
+
+        return retval;
+    }
+}
@@ -3,7 +3,6 @@ package traffic.body.geom;
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.standard.entities.Edge;
 import rescuecore2.misc.geometry.*;
-import rescuecore2.misc.Pair;
 import java.awt.geom.Area;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Path2D;
@@ -17,9 +16,16 @@ public class Cell
     private Area shape;
     private Point2D centroid;
 
+    //  bounds and outline segments (x1, y1, x2, y2) of the shape for point
+    //  location without going through the awt area
+    private double minX;
+    private double minY;
+    private double maxX;
+    private double maxY;
+    private double[] segments;
+
     private List<Line2D> outlines;
     private Map<Integer, Point2D> junctions;
-    private Map<Pair<EntityID, Integer>, Point2D> neighbourJunctions;
     private List<EntityID> neighbours;
 
     public Cell(
@@ -32,11 +38,43 @@ public class Cell
         this.outlines = outlines;
         this.junctions = junctions;
         this.neighbours = neighbours;
-        this.neighbourJunctions = new HashMap<>();
 
         PathIterator pi = shape.getPathIterator(null);
         List<Point2D> apexes = GeomUtil.toUnique(GeomUtil.toPointList(pi).get(0));
         this.centroid = GeomUtil.computeCentroid(apexes);
+
+        this.makeSegments();
+    }
+
+    private void makeSegments()
+    {
+        List<List<Point2D>> subs = GeomUtil.toPointList(this.shape.getPathIterator(null));
+        int n = subs.stream().mapToInt(List::size).sum();
+
+        this.segments = new double[4*n];
+        this.minX = this.minY = Double.POSITIVE_INFINITY;
+        this.maxX = this.maxY = Double.NEGATIVE_INFINITY;
+
+        int k = 0;
+        for (List<Point2D> sub : subs)
+        {
+            if (sub.isEmpty()) continue;
+
+            Point2D prev = sub.get(sub.size()-1);
+            for (Point2D point : sub)
+            {
+                this.segments[k++] = prev.getX();
+                this.segments[k++] = prev.getY();
+                this.segments[k++] = point.getX();
+                this.segments[k++] = point.getY();
+                prev = point;
+
+                this.minX = Math.min(this.minX, point.getX());
+                this.minY = Math.min(this.minY, point.getY());
+                this.maxX = Math.max(this.maxX, point.getX());
+                this.maxY = Math.max(this.maxY, point.getY());
+            }
+        }
     }
 
     public Area getShape()
@@ -49,6 +87,50 @@ public class Cell
         return this.centroid;
     }
 
+    //  even-odd crossing test, the outlines of an area never overlap
+    public boolean contains(double x, double y)
+    {
+        if (x < this.minX || x > this.maxX || y < this.minY || y > this.maxY)
+            return false;
+
+        boolean retval = false;
+        for (int k=0; k<this.segments.length; k+=4)
+        {
+            double x1 = this.segments[k  ];
+            double y1 = this.segments[k+1];
+            double x2 = this.segments[k+2];
+            double y2 = this.segments[k+3];
+            if ((y1 > y) == (y2 > y)) continue;
+
+            if (x < x1 + (y-y1) * (x2-x1) / (y2-y1)) retval = !retval;
+        }
+
+        return retval;
+    }
+
+    //  distance from a point to the shape, zero inside it
+    public double computeDistance(double x, double y)
+    {
+        if (this.contains(x, y)) return 0.0;
+
+        double retval = Double.POSITIVE_INFINITY;
+        for (int k=0; k<this.segments.length; k+=4)
+        {
+            double x1 = this.segments[k  ];
+            double y1 = this.segments[k+1];
+            double dx = this.segments[k+2] - x1;
+            double dy = this.segments[k+3] - y1;
+
+            double l = dx*dx + dy*dy;
+            double u = l > 0.0 ? ((x-x1)*dx + (y-y1)*dy) / l : 0.0;
+            u = Math.max(0.0, Math.min(1.0, u));
+
+            retval = Math.min(retval, Math.hypot(x1 + u*dx - x, y1 + u*dy - y));
+        }
+
+        return retval;
+    }
+
     public List<Line2D> getOutlines()
     {
         return this.outlines;
@@ -59,11 +141,6 @@ public class Cell
         return this.junctions;
     }
 
-    public Map<Pair<EntityID, Integer>, Point2D> getNeighbourJunctions()
-    {
-        return this.neighbourJunctions;
-    }
-
     public List<EntityID> getNeighbours()
     {
         return this.neighbours;
@@ -231,65 +308,4 @@ public class Cell
 
         cells.addAll(newCells);
     }
-
-    public static Map<EntityID, List<Cell>> updateNeighbourJunctions(
-        Map<EntityID, List<Cell>> areaCells,
-        List<EntityID> path)
-    {
-        for (EntityID id : path)
-        {
-            List<Cell> cells = areaCells.get(id);
-            cells
-                .stream()
-                .forEach(c -> c.getNeighbourJunctions().clear());
-        }
-
-        for (int i=0; i<path.size()-1; ++i)
-        {
-            EntityID id1 = path.get(i  );
-            EntityID id2 = path.get(i+1);
-
-            List<Cell> cells1 = areaCells.get(id1);
-            List<Cell> cells2 = areaCells.get(id2);
-
-            for (int j=0; j<cells1.size(); ++j)
-            {
-                Cell cell1 = cells1.get(j);
-                if (!cell1.getNeighbours().contains(id2)) continue;
-                List<Line2D> outlines1 = cell1.getOutlines();
-
-                for (int k=0; k<cells2.size(); ++k)
-                {
-                    Cell cell2 = cells2.get(k);
-                    if (!cell2.getNeighbours().contains(id1)) continue;
-                    List<Line2D> outlines2 = cell2.getOutlines();
-
-                    for (int l=0; l<outlines1.size(); ++l)
-                    {
-                        Line2D outline1 = outlines1.get(l);
-                        for (int m=0; m<outlines2.size(); ++m)
-                        {
-                            Line2D outline2 = outlines2.get(m);
-
-                            Line2D overlapping =
-                                GeomUtil.computeOverlapping(outline1, outline2);
-                            if (overlapping == null) continue;
-
-                            Point2D median = GeomUtil.makeMedian(overlapping);
-                            cell1.getNeighbourJunctions().put(new Pair<>(id2, k), median);
-                            cell2.getNeighbourJunctions().put(new Pair<>(id1, j), median);
-                        }
-                    }
-                }
-            }
-        }
-
-        Map<EntityID, List<Cell>> retval = new HashMap<>();
-        for (EntityID id : path)
-        {
-            retval.put(id, areaCells.get(id));
-        }
-
-        return retval;
-    }
 }
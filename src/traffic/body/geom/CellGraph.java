@@ -0,0 +1,52 @@
+package traffic.body.geom;
+
+import rescuecore2.worldmodel.EntityID;
+
+import java.util.*;
+
+//  map-wide junctions between the cells of neighbouring areas
+//  the junctions of a pair of areas are computed once and kept until the
+//  cells of either area are invalidated
+public class CellGraph
+{
+    private Map<EntityID, Map<EntityID, AreaJunctions>> junctions;
+
+    public CellGraph()
+    {
+        this.junctions = new HashMap<>();
+    }
+
+    //  junctions of a pair of areas, or null if not computed yet
+    public AreaJunctions get(EntityID id1, EntityID id2)
+    {
+        Map<EntityID, AreaJunctions> map = this.junctions.get(id1);
+        return map == null ? null : map.get(id2);
+    }
+
+    public AreaJunctions compute(
+        EntityID id1,
+        List<Cell> cells1,
+        EntityID id2,
+        List<Cell> cells2)
+    {
+        AreaJunctions retval = this.get(id1, id2);
+        if (retval != null) return retval;
+
+        retval = new AreaJunctions(id1, cells1, id2, cells2);
+        this.junctions.computeIfAbsent(id1, k -> new HashMap<>()).put(id2, retval);
+        this.junctions.computeIfAbsent(id2, k -> new HashMap<>()).put(id1, retval);
+        return retval;
+    }
+
+    public void invalidate(EntityID id)
+    {
+        Map<EntityID, AreaJunctions> map = this.junctions.remove(id);
+        if (map == null) return;
+
+        for (EntityID other : map.keySet())
+        {
+            Map<EntityID, AreaJunctions> reverse = this.junctions.get(other);
+            if (reverse != null) reverse.remove(id);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package traffic.body.path;
 
+import traffic.body.geom.*;
 import traffic.util.*;
 
 import rescuecore2.worldmodel.*;
@@ -13,10 +14,19 @@ public class Agent
     private Human wrapped;
     private boolean executable;
 
-    private List<PathElement> path;
+    //  remaining path from the element at pathCursor, whose origin follows
+    //  the agent as (originX, originY)
+    private EntityID[] pathIDs;
+    private double[] pathOriginXs;
+    private double[] pathOriginYs;
+    private double[] pathEndXs;
+    private double[] pathEndYs;
+    private int pathCursor;
+    private double originX;
+    private double originY;
 
     private Point2D location;
-    private List<Point2D> history;
+    private HistoryRecorder history;
 
     private boolean colocated;
     private Vector2D velocity;
@@ -51,8 +61,8 @@ public class Agent
             this.executable = false;
         }
 
-        this.path = null;
-        this.history = new LinkedList<>();
+        this.pathIDs = null;
+        this.history = new HistoryRecorder();
 
         this.unwrap().undefinePositionHistory();
         this.unwrap().setTravelDistance(0);
@@ -65,28 +75,52 @@ public class Agent
 
     public void setPath(List<PathElement> path)
     {
-        this.path = new LinkedList<>();
-        if (path.isEmpty()) return;
-
-        EntityID id = path.get(0).getID();
-        Line2D line = path.get(0).getLine();
-        for (int i=1; i<path.size(); ++i)
+        List<PathElement> merged = new ArrayList<>();
+        if (!path.isEmpty())
         {
-            PathElement next = path.get(i);
-            if (next.getID().equals(id) &&
-                GeometryTools2D.parallel(line, next.getLine()))
-            {
-                line = new Line2D(line.getOrigin(), next.getLine().getEndPoint());
-            }
-            else
+            EntityID id = path.get(0).getID();
+            Line2D line = path.get(0).getLine();
+            for (int i=1; i<path.size(); ++i)
             {
-                this.path.add(new PathElement(id, line));
-                id = next.getID();
-                line = next.getLine();
+                PathElement next = path.get(i);
+                if (next.getID().equals(id) &&
+                    GeometryTools2D.parallel(line, next.getLine()))
+                {
+                    line = new Line2D(line.getOrigin(), next.getLine().getEndPoint());
+                }
+                else
+                {
+                    merged.add(new PathElement(id, line));
+                    id = next.getID();
+                    line = next.getLine();
+                }
             }
+
+            merged.add(new PathElement(id, line));
         }
 
-        this.path.add(new PathElement(id, line));
+        int n = merged.size();
+        this.pathIDs = new EntityID[n];
+        this.pathOriginXs = new double[n];
+        this.pathOriginYs = new double[n];
+        this.pathEndXs = new double[n];
+        this.pathEndYs = new double[n];
+        for (int i=0; i<n; ++i)
+        {
+            Line2D line = merged.get(i).getLine();
+            this.pathIDs[i] = merged.get(i).getID();
+            this.pathOriginXs[i] = line.getOrigin().getX();
+            this.pathOriginYs[i] = line.getOrigin().getY();
+            this.pathEndXs[i] = line.getEndPoint().getX();
+            this.pathEndYs[i] = line.getEndPoint().getY();
+        }
+
+        this.pathCursor = 0;
+        if (n > 0)
+        {
+            this.originX = this.pathOriginXs[0];
+            this.originY = this.pathOriginYs[0];
+        }
     }
 
     public void restrictAction()
@@ -94,9 +128,9 @@ public class Agent
         this.executable = false;
     }
 
-    public void reflect(ChangeSet changes, StandardWorldModel model)
+    public void reflect(ChangeSet changes, AreaIndex areaIndex)
     {
-        this.reflectToWrapped(model);
+        this.reflectToWrapped(areaIndex);
 
         Human unwrapped = this.unwrap();
         changes.addChange(unwrapped, unwrapped.getXProperty());
@@ -205,66 +239,27 @@ public class Agent
         return this.executable;
     }
 
-    private void reflectToWrapped(StandardWorldModel model)
+    private void reflectToWrapped(AreaIndex areaIndex)
     {
         if (this.history.isEmpty())
             return;
 
-        //  dedupe position history
-        List<Point2D> deduped = new LinkedList<>();
-        deduped.add(this.history.get(0));
-        for (int i=1; i<this.history.size(); ++i)
-        {
-            Point2D point = this.history.get(i);
-            Point2D last = deduped.get(deduped.size()-1);
-            if (!point.equals(last)) deduped.add(point);
-        }
-
         //  set position history
-        int[] positionHistory = new int[deduped.size()*2];
-        for (int i=0; i<deduped.size(); ++i)
-        {
-            Point2D point = deduped.get(i);
-            positionHistory[i*2+0] = (int)point.getX();
-            positionHistory[i*2+1] = (int)point.getY();
-        }
-
-        this.unwrap().setPositionHistory(positionHistory);
+        this.unwrap().setPositionHistory(this.history.getPositionHistory());
 
         //  set x and y
-        Point2D last = deduped.get(deduped.size()-1);
-        this.unwrap().setX((int)last.getX());
-        this.unwrap().setY((int)last.getY());
+        this.unwrap().setX((int)this.history.getLastX());
+        this.unwrap().setY((int)this.history.getLastY());
 
         //  set travel distance
-        double travelDistance = 0.0;
-        List<Line2D> lines = GeometryTools2D.pointsToLines(deduped, false);
-
-        for (Line2D line : lines)
-        {
-            Vector2D vec = line.getDirection();
-            travelDistance += vec.getLength();
-        }
-
-        this.unwrap().setTravelDistance((int)travelDistance);
+        this.unwrap().setTravelDistance((int)this.history.getTravelDistance());
 
         EntityID position = this.unwrap().getPosition();
         if (this.canMove())
         {
-            Collection<StandardEntity> entities =
-                model.getObjectsInRange((int)this.location.getX(), (int)this.location.getY(), 100);
-
-            for (StandardEntity entity : entities)
-            {
-                if (!(entity instanceof Area)) continue;
-                Area area = (Area)entity;
-
-                if (area.getShape().contains(this.location.getX(), this.location.getY()))
-                {
-                    position = area.getID();
-                    break;
-                }
-            }
+            EntityID located =
+                areaIndex.locate(this.location.getX(), this.location.getY());
+            if (located != null) position = located;
         }
         this.unwrap().setPosition(position);
     }
@@ -275,52 +270,125 @@ public class Agent
         return Environment.AGENT_VELOCITY_MEAN;
     }
 
-    public List<PathElement> getPath()
+    public boolean hasPath()
     {
-        return this.path;
+        return this.pathIDs != null;
     }
 
-    public void updateNextPathElement()
+    //  remaining path elements, with the origin of the first one at the
+    //  position of the last update
+    public List<PathElement> getPath()
     {
-        if (this.path == null || this.path.isEmpty()) return;
+        if (this.pathIDs == null) return null;
+
+        List<PathElement> retval = new ArrayList<>();
+        for (int i=this.pathCursor; i<this.pathIDs.length; ++i)
+        {
+            double ox = i == this.pathCursor ? this.originX : this.pathOriginXs[i];
+            double oy = i == this.pathCursor ? this.originY : this.pathOriginYs[i];
+            Line2D line = new Line2D(
+                new Point2D(ox, oy),
+                new Point2D(this.pathEndXs[i], this.pathEndYs[i]));
+            retval.add(new PathElement(this.pathIDs[i], line));
+        }
+
+        return retval;
+    }
 
+    //  moves on to the next element while (x, y) is not closer to the
+    //  current one, and moves the origin of the current one to (x, y)
+    public void updateNextPathElement(double x, double y)
+    {
+        if (!this.hasNextPathElement()) return;
 
-        while (this.path.size() >= 2)
+        while (this.pathCursor+1 < this.pathIDs.length)
         {
-            Line2D l1 = this.path.get(0).getLine();
-            Line2D l2 = this.path.get(1).getLine();
+            int next = this.pathCursor+1;
 
-            double d1 = GeometryTools2D.getDistance(
-                GeometryTools2D.getClosestPointOnSegment(l1, this.location),
-                this.location);
-            double d2 = GeometryTools2D.getDistance(
-                GeometryTools2D.getClosestPointOnSegment(l2, this.location),
-                this.location);
+            double d1 = computeSegmentDistance(
+                this.originX, this.originY,
+                this.pathEndXs[this.pathCursor], this.pathEndYs[this.pathCursor],
+                x, y);
+            double d2 = computeSegmentDistance(
+                this.pathOriginXs[next], this.pathOriginYs[next],
+                this.pathEndXs[next], this.pathEndYs[next],
+                x, y);
 
             if (d1 < d2) break;
 
-            this.path.remove(0);
+            this.pathCursor = next;
         }
 
-        this.path.get(0).updateOrigin(this.location);
+        this.originX = x;
+        this.originY = y;
     }
 
-    public void setXY(double x, double y)
+    public boolean hasNextPathElement()
     {
-        this.location = new Point2D(x, y);
-        this.history.add(this.location);
+        return this.pathIDs != null && this.pathCursor < this.pathIDs.length;
+    }
+
+    public boolean isLastPathElement()
+    {
+        return this.pathIDs != null && this.pathCursor == this.pathIDs.length-1;
+    }
+
+    public double getNextPathEndX()
+    {
+        return this.pathEndXs[this.pathCursor];
+    }
+
+    public double getNextPathEndY()
+    {
+        return this.pathEndYs[this.pathCursor];
     }
 
-    public PathElement getNextPathElement()
+    public double getFinalDestinationX()
     {
-        if (this.path == null || this.path.isEmpty()) return null;
-        return this.path.get(0);
+        return this.pathEndXs[this.pathEndXs.length-1];
+    }
+
+    public double getFinalDestinationY()
+    {
+        return this.pathEndYs[this.pathEndYs.length-1];
+    }
+
+    //  same arithmetic as GeometryTools2D.getClosestPointOnSegment followed
+    //  by GeometryTools2D.getDistance
+    private static double computeSegmentDistance(
+        double ox, double oy,
+        double ex, double ey,
+        double x, double y)
+    {
+        double dx = ex - ox;
+        double dy = ey - oy;
+        double length = Math.hypot(dx, dy);
+        double u = ((x-ox)*dx + (y-oy)*dy) / (length*length);
+
+        double cx = ox + u*dx;
+        double cy = oy + u*dy;
+        if (u <= 0.0)
+        {
+            cx = ox;
+            cy = oy;
+        }
+        else if (u >= 1.0)
+        {
+            cx = ex;
+            cy = ey;
+        }
+
+        return Math.hypot(cx-x, cy-y);
+    }
+
+    public void setXY(double x, double y)
+    {
+        this.location = new Point2D(x, y);
     }
 
-    public Point2D getFinalDestination()
+    public void record(double x, double y)
     {
-        if (this.path == null || this.path.isEmpty()) return null;
-        return this.path.get(this.path.size()-1).getLine().getEndPoint();
+        this.history.record(x, y);
     }
 
     public double getVelocityLimit()
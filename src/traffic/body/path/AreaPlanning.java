@@ -0,0 +1,299 @@
+package traffic.body.path;
+
+import traffic.body.geom.*;
+import traffic.util.*;
+
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.standard.entities.*;
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+
+//  area level planning that repairs a requested path around blocked areas
+//  an area is crossed through its own cells from the link with the previous
+//  area, or from the start, to the link with the next one, and the crossing
+//  costs the shortest way over the cells, or is blocked if they do not
+//  connect both links
+//  the path is kept up to a blocked crossing, and the shortest detour over
+//  crossings rejoins it at a later area that can be crossed on along it
+//  a detour expands at most limit crossings and makes the cells of at most
+//  Environment.AREA_PLANNING_DECOMPOSITIONS areas, and the path is kept as
+//  it is from a crossing that cannot be repaired
+public class AreaPlanning
+{
+    //  cells and junctions of areas, made on demand
+    public interface Areas
+    {
+        boolean hasCells(EntityID id);
+        List<Cell> computeCells(EntityID id);
+        AreaJunctions computeJunctions(EntityID id1, EntityID id2);
+    }
+
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+    public static List<EntityID> repair(
+        List<EntityID> path,
+        Point2D start,
+        Areas areas,
+        StandardWorldModel model,
+        int limit)
+    {
+        List<EntityID> retval = new ArrayList<>(path.size());
+        if (path.isEmpty()) return retval;
+
+        retval.add(path.get(0));
+        EntityID prev = null;
+        int i = 0;
+        while (i+1 < path.size())
+        {
+            EntityID id = path.get(i  );
+            EntityID next = path.get(i+1);
+            if (id.equals(next))
+            {
+                retval.add(next);
+                i++;
+                continue;
+            }
+
+            if (computeCrossing(prev, id, next, start, areas) < INFINITY)
+            {
+                retval.add(next);
+                prev = id;
+                i++;
+                continue;
+            }
+
+            List<EntityID> detour = new ArrayList<>();
+            int j = detour(prev, i, path, start, areas, model, limit, detour);
+            if (j < 0)
+            {
+                retval.addAll(path.subList(i+1, path.size()));
+                break;
+            }
+
+            retval.addAll(detour.subList(1, detour.size()));
+            prev = detour.get(detour.size()-2);
+            i = j;
+        }
+
+        return retval;
+    }
+
+    //  shortest way over crossings from the area at i entered from from to a
+    //  later area of the path, added to detour from the area at i on
+    //  returns the index of the rejoined area, or -1 if none is reached
+    private static int detour(
+        EntityID from,
+        int i,
+        List<EntityID> path,
+        Point2D start,
+        Areas areas,
+        StandardWorldModel model,
+        int limit,
+        List<EntityID> detour)
+    {
+        Map<Long, Integer> indices = new HashMap<>();
+        List<EntityID> prevs = new ArrayList<>();
+        List<EntityID> ids = new ArrayList<>();
+        int[] parents = new int[16];
+        double[] costs = new double[16];
+        BitSet closed = new BitSet();
+        NodeHeap open = new NodeHeap();
+        int decompositions = 0;
+
+        indices.put(toKey(from, path.get(i)), 0);
+        prevs.add(from);
+        ids.add(path.get(i));
+        parents[0] = -1;
+        costs[0] = 0.0;
+        open.add(0, 0.0);
+
+        int expanded = 0;
+        while (!open.isEmpty() && expanded++ < limit)
+        {
+            int n = open.poll();
+            closed.set(n);
+
+            EntityID prev = prevs.get(n);
+            EntityID id = ids.get(n);
+            int j = n > 0 ? findRejoined(prev, id, i, path, start, areas) : -1;
+            if (j >= 0)
+            {
+                for (; n >= 0; n = parents[n]) detour.add(ids.get(n));
+                Collections.reverse(detour);
+                return j;
+            }
+
+            List<EntityID> nexts = new ArrayList<>();
+            for (EntityID next : ((Area)model.getEntity(id)).getNeighbours())
+            {
+                if (!(model.getEntity(next) instanceof Area)) continue;
+                if (!areas.hasCells(next))
+                {
+                    if (decompositions >= Environment.AREA_PLANNING_DECOMPOSITIONS)
+                        continue;
+                    decompositions++;
+                }
+                nexts.add(next);
+            }
+
+            double[] crossings = computeCrossings(prev, id, nexts, start, areas);
+            for (int k=0; k<nexts.size(); ++k)
+            {
+                if (crossings[k] == INFINITY) continue;
+
+                long key = toKey(id, nexts.get(k));
+                Integer m = indices.get(key);
+                if (m != null && closed.get(m)) continue;
+
+                double cost = costs[n] + crossings[k];
+                if (m == null)
+                {
+                    m = ids.size();
+                    indices.put(key, m);
+                    prevs.add(id);
+                    ids.add(nexts.get(k));
+                    if (m == parents.length)
+                    {
+                        parents = Arrays.copyOf(parents, 2*m);
+                        costs = Arrays.copyOf(costs, 2*m);
+                    }
+
+                    parents[m] = n;
+                    costs[m] = cost;
+                    open.add(m, cost);
+                }
+                else
+                if (cost < costs[m])
+                {
+                    parents[m] = n;
+                    costs[m] = cost;
+                    open.decrease(m, cost);
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    //  first index after i of the area id on the path, from which the path
+    //  can be followed on when id is entered from prev, or -1
+    private static int findRejoined(
+        EntityID prev,
+        EntityID id,
+        int i,
+        List<EntityID> path,
+        Point2D start,
+        Areas areas)
+    {
+        for (int j=i+1; j<path.size(); ++j)
+        {
+            if (!path.get(j).equals(id)) continue;
+            if (j+1 == path.size() || path.get(j+1).equals(id)) return j;
+
+            if (computeCrossing(prev, id, path.get(j+1), start, areas) < INFINITY)
+                return j;
+        }
+
+        return -1;
+    }
+
+    private static long toKey(EntityID prev, EntityID id)
+    {
+        long value = prev == null ? -1 : prev.getValue();
+        return (value << 32) | (id.getValue() & 0xffffffffL);
+    }
+
+    private static double computeCrossing(
+        EntityID prev,
+        EntityID id,
+        EntityID next,
+        Point2D start,
+        Areas areas)
+    {
+        return computeCrossings(prev, id, Collections.singletonList(next), start, areas)[0];
+    }
+
+    //  costs of crossing id from prev, or from start if prev is null, to
+    //  each of nexts over the cells of id
+    //  the way runs over cell centroids and the junctions between the cells,
+    //  and enters and leaves the area at the junctions with its neighbours
+    private static double[] computeCrossings(
+        EntityID prev,
+        EntityID id,
+        List<EntityID> nexts,
+        Point2D start,
+        Areas areas)
+    {
+        Cell[] cells = areas.computeCells(id).toArray(new Cell[0]);
+        double[] dists = new double[cells.length];
+        Arrays.fill(dists, INFINITY);
+
+        if (prev == null)
+        {
+            int s = PathPlanning.seekStartingNode(start, Arrays.asList(cells));
+            for (int c=0; c<cells.length; ++c)
+            {
+                if (s < 0 || s == c)
+                    dists[c] = GeometryTools2D.getDistance(start, cells[c].getCentroid());
+            }
+        }
+        else
+        {
+            AreaJunctions junctions = areas.computeJunctions(id, prev);
+            for (int c=0; c<cells.length; ++c)
+            {
+                Point2D[] points = junctions.getPoints(id, c);
+                if (points.length > 0)
+                    dists[c] = GeometryTools2D.getDistance(points[0], cells[c].getCentroid());
+            }
+        }
+
+        NodeHeap open = new NodeHeap();
+        for (int c=0; c<cells.length; ++c)
+        {
+            if (dists[c] < INFINITY) open.add(c, dists[c]);
+        }
+
+        while (!open.isEmpty())
+        {
+            int c = open.poll();
+            Point2D centroid = cells[c].getCentroid();
+            for (Map.Entry<Integer, Point2D> entry : cells[c].getJunctions().entrySet())
+            {
+                int d = entry.getKey();
+                if (d >= cells.length) continue;
+
+                double dist = dists[c]
+                    + GeometryTools2D.getDistance(centroid, entry.getValue())
+                    + GeometryTools2D.getDistance(entry.getValue(), cells[d].getCentroid());
+                if (dist >= dists[d]) continue;
+
+                if (dists[d] == INFINITY) open.add(d, dist);
+                else if (open.contains(d)) open.decrease(d, dist);
+                else continue;
+
+                dists[d] = dist;
+            }
+        }
+
+        double[] retval = new double[nexts.size()];
+        for (int k=0; k<nexts.size(); ++k)
+        {
+            retval[k] = INFINITY;
+
+            AreaJunctions junctions = areas.computeJunctions(id, nexts.get(k));
+            for (int c=0; c<cells.length; ++c)
+            {
+                Point2D[] points = junctions.getPoints(id, c);
+                if (points.length == 0 || dists[c] == INFINITY) continue;
+
+                double cost = dists[c]
+                    + GeometryTools2D.getDistance(cells[c].getCentroid(), points[0]);
+                retval[k] = Math.min(retval[k], cost);
+            }
+        }
+
+        return retval;
+    }
+}
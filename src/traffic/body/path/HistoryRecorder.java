@@ -0,0 +1,134 @@
+package traffic.body.path;
+
+import traffic.util.*;
+
+import java.util.*;
+
+//  streaming recorder of the positions of an agent within a timestep
+//  the travel distance is summed over every recorded position, but only the
+//  first and the last position and the positions where the direction turns
+//  farther than the tolerance from the direction the path took at the last
+//  kept position are kept, so kept segments stay within the tolerance of
+//  every position they skip
+public class HistoryRecorder
+{
+    private static final double COS_TOLERANCE =
+        Math.cos(Environment.HISTORY_ANGLE_TOLERANCE);
+
+    private double[] points;
+    private int size;
+
+    private double anchorX;
+    private double anchorY;
+    private double directionX;
+    private double directionY;
+    private boolean directed;
+
+    private double lastX;
+    private double lastY;
+    private boolean lastKept;
+
+    private int count;
+    private double travelDistance;
+
+    public HistoryRecorder()
+    {
+        this.points = new double[8];
+        this.size = 0;
+        this.directed = false;
+        this.lastKept = false;
+        this.count = 0;
+        this.travelDistance = 0.0;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.count == 0;
+    }
+
+    public void record(double x, double y)
+    {
+        if (this.count > 0 && x == this.lastX && y == this.lastY) return;
+
+        if (this.count == 0)
+        {
+            this.keep(x, y);
+            this.lastX = x;
+            this.lastY = y;
+            this.lastKept = true;
+            this.count = 1;
+            return;
+        }
+
+        this.travelDistance += Math.hypot(x-this.lastX, y-this.lastY);
+
+        if (!this.directed)
+        {
+            this.directionX = x - this.anchorX;
+            this.directionY = y - this.anchorY;
+            this.directed = true;
+        }
+        else if (this.turns(x-this.anchorX, y-this.anchorY))
+        {
+            this.keep(this.lastX, this.lastY);
+            this.directionX = x - this.lastX;
+            this.directionY = y - this.lastY;
+        }
+
+        this.lastX = x;
+        this.lastY = y;
+        this.lastKept = false;
+        this.count++;
+    }
+
+    public double getLastX()
+    {
+        return this.lastX;
+    }
+
+    public double getLastY()
+    {
+        return this.lastY;
+    }
+
+    public double getTravelDistance()
+    {
+        return this.travelDistance;
+    }
+
+    //  kept positions as x, y pairs truncated to int
+    public int[] getPositionHistory()
+    {
+        int n = this.lastKept ? this.size : this.size+2;
+        int[] retval = new int[n];
+
+        for (int i=0; i<this.size; ++i) retval[i] = (int)this.points[i];
+        if (!this.lastKept)
+        {
+            retval[n-2] = (int)this.lastX;
+            retval[n-1] = (int)this.lastY;
+        }
+
+        return retval;
+    }
+
+    private boolean turns(double dx, double dy)
+    {
+        double dot = dx*this.directionX + dy*this.directionY;
+        double norms =
+            Math.hypot(dx, dy) * Math.hypot(this.directionX, this.directionY);
+
+        return dot < COS_TOLERANCE * norms;
+    }
+
+    private void keep(double x, double y)
+    {
+        if (this.size+2 > this.points.length)
+            this.points = Arrays.copyOf(this.points, this.points.length*2);
+
+        this.points[this.size++] = x;
+        this.points[this.size++] = y;
+        this.anchorX = x;
+        this.anchorY = y;
+    }
+}
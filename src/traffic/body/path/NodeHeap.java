@@ -0,0 +1,145 @@
+package traffic.body.path;
+
+import java.util.*;
+
+//  binary min-heap of node indices ordered by estimate, with ties broken by
+//  the order in which the nodes were added, whose queued estimates can be
+//  lowered in place
+public class NodeHeap
+{
+    private int[] heap;
+    private int size;
+
+    private int[] positions;
+    private double[] estimates;
+    private long[] orders;
+    private long counter;
+
+    public NodeHeap()
+    {
+        this.heap = new int[16];
+        this.size = 0;
+
+        this.positions = new int[16];
+        this.estimates = new double[16];
+        this.orders = new long[16];
+        Arrays.fill(this.positions, -1);
+        this.counter = 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    public boolean contains(int node)
+    {
+        return node < this.positions.length && this.positions[node] >= 0;
+    }
+
+    public void add(int node, double estimate)
+    {
+        this.ensure(node);
+        if (this.size == this.heap.length)
+            this.heap = Arrays.copyOf(this.heap, this.size*2);
+
+        this.estimates[node] = estimate;
+        this.orders[node] = this.counter++;
+        this.heap[this.size] = node;
+        this.positions[node] = this.size;
+        this.size++;
+
+        this.up(this.size-1);
+    }
+
+    public void decrease(int node, double estimate)
+    {
+        this.estimates[node] = estimate;
+        this.up(this.positions[node]);
+    }
+
+    public double peekEstimate()
+    {
+        return this.estimates[this.heap[0]];
+    }
+
+    public int poll()
+    {
+        int retval = this.heap[0];
+        this.positions[retval] = -1;
+
+        this.size--;
+        if (this.size > 0)
+        {
+            this.heap[0] = this.heap[this.size];
+            this.positions[this.heap[0]] = 0;
+            this.down(0);
+        }
+
+        return retval;
+    }
+
+    public void clear()
+    {
+        for (int i=0; i<this.size; ++i) this.positions[this.heap[i]] = -1;
+        this.size = 0;
+        this.counter = 0;
+    }
+
+    private boolean less(int node1, int node2)
+    {
+        double e1 = this.estimates[node1];
+        double e2 = this.estimates[node2];
+        if (e1 != e2) return e1 < e2;
+        return this.orders[node1] < this.orders[node2];
+    }
+
+    private void up(int i)
+    {
+        int node = this.heap[i];
+        while (i > 0)
+        {
+            int parent = (i-1) >>> 1;
+            if (!this.less(node, this.heap[parent])) break;
+
+            this.heap[i] = this.heap[parent];
+            this.positions[this.heap[i]] = i;
+            i = parent;
+        }
+
+        this.heap[i] = node;
+        this.positions[node] = i;
+    }
+
+    private void down(int i)
+    {
+        int node = this.heap[i];
+        while (true)
+        {
+            int child = 2*i+1;
+            if (child >= this.size) break;
+            if (child+1 < this.size && this.less(this.heap[child+1], this.heap[child]))
+                child++;
+            if (!this.less(this.heap[child], node)) break;
+
+            this.heap[i] = this.heap[child];
+            this.positions[this.heap[i]] = i;
+            i = child;
+        }
+
+        this.heap[i] = node;
+        this.positions[node] = i;
+    }
+
+    private void ensure(int node)
+    {
+        if (node < this.positions.length) return;
+
+        int capacity = Math.max(node+1, this.positions.length*2);
+        int old = this.positions.length;
+        this.positions = Arrays.copyOf(this.positions, capacity);
+        this.estimates = Arrays.copyOf(this.estimates, capacity);
+        this.orders = Arrays.copyOf(this.orders, capacity);
+        Arrays.fill(this.positions, old, capacity, -1);
+    }
+}
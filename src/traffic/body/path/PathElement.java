@@ -7,11 +7,20 @@ public class PathElement
 {
     private EntityID id;
     private Line2D line;
+    private Line2D portal;
 
     public PathElement(EntityID id, Line2D line)
+    {
+        this(id, line, null);
+    }
+
+    //  portal is the shared outline of the cells that the element leaves
+    //  and enters at its end point
+    public PathElement(EntityID id, Line2D line, Line2D portal)
     {
         this.id = id;
         this.line = line;
+        this.portal = portal;
     }
 
     public EntityID getID()
@@ -24,8 +33,8 @@ public class PathElement
         return this.line;
     }
 
-    public void updateOrigin(Point2D origin)
+    public Line2D getPortal()
     {
-        this.line = new Line2D(origin, this.line.getEndPoint());
+        return this.portal;
     }
 }
@@ -1,6 +1,7 @@
 package traffic.body.path;
 
 import traffic.body.geom.*;
+import traffic.util.*;
 
 import rescuecore2.worldmodel.EntityID;
 import rescuecore2.standard.entities.*;
@@ -16,6 +17,7 @@ public class PathPlanning
         Agent agent,
         List<EntityID> pathIDs,
         Map<EntityID, List<Cell>> areaCells,
+        CellGraph graph,
         Point2D dest,
         StandardWorldModel model)
     {
@@ -25,79 +27,58 @@ public class PathPlanning
         if (s < 0) return new LinkedList<>();
 
         EntityID target = pathIDs.get(pathIDs.size()-1);
-        int g = computeClosest(dest, areaCells.get(target));
+        int g = seekGoalNode(dest, areaCells.get(target));
         for (int i=pathIDs.size()-2; i>=0 && g<0; --i)
         {
             Area area = (Area)model.getEntity(pathIDs.get(i+1));
             dest = new Point2D((double)area.getX(), (double)area.getY());
-            g = computeClosest(dest, areaCells.get(pathIDs.get(i)));
+            g = seekGoalNode(dest, areaCells.get(pathIDs.get(i)));
         }
         if (g < 0) return new LinkedList<>();
 
-        List<Pair<EntityID, Integer>> open = new LinkedList<>();
-        List<Pair<EntityID, Integer>> close = new LinkedList<>();
-        Map<Pair<EntityID, Integer>, Node> nodeMap = new HashMap<>();
+        SearchState state = STATE.get();
+        state.reset(areaCells, pathIDs, graph);
+        NodeHeap open = state.getOpen();
 
-        open.add(new Pair<>(position, s));
-        nodeMap.put(
-            new Pair<>(position, s),
-            new Node(position, s, null, 0.0, computeH(cells.get(s).getCentroid(), dest),
-                     computeIDHistory(null, new Pair<>(position, s))));
+        int start = state.toKey(position, s);
+        int goal = state.toKey(target, g);
+
+        int index = state.getCorridorArea(0) == state.getArea(start) ? 0 : -1;
+        state.setNode(start, -1, 0.0, computeH(state.getCell(start).getCentroid(), dest), index);
+        open.add(start, state.estimate(start));
 
         while (!open.isEmpty())
         {
-            Node n = null;
-            for (Pair<EntityID, Integer> pair : open)
+            if (open.peekEstimate() == Double.POSITIVE_INFINITY) break;
+
+            int n = open.poll();
+            if (n == goal)
             {
-                Node node = nodeMap.get(pair);
-                if (n == null) n = node;
-                else if (node.estimate() < n.estimate()) n = node;
+                return toPathElement(agent.getXY(), dest, n, state, areaCells, graph);
             }
+            state.setClosed(n, true);
 
-            if (n.estimate() == Double.POSITIVE_INFINITY) break;
-
-            if (n.getCell().equals(new Pair<>(target, g)))
+            Cell cell = state.getCell(n);
+            for (int num : cell.getJunctions().keySet())
             {
-                return toPathElement(agent.getXY(), dest, n, areaCells);
+                expand(state, n, state.toSiblingKey(n, num), dest);
             }
-            open.remove(n.getCell());
-            close.add(n.getCell());
-
-            List<Pair<EntityID, Integer>> neighbours = extractNeighbours(n, areaCells);
-            for (Pair<EntityID, Integer> neighbour : neighbours)
+            for (int l=state.getFirstLink(n); l<state.getLastLink(n); ++l)
             {
-                EntityID id = neighbour.first();
-                int num = neighbour.second();
-                List<EntityID> idHistory = computeIDHistory(n, neighbour);
-                double cost = computeCost(n, neighbour, areaCells, pathIDs, idHistory);
-                Node m = new Node(id, num, n, cost,
-                        computeH(toCell(neighbour, areaCells).getCentroid(), dest), idHistory);
-
-                if (!open.contains(neighbour) && !close.contains(neighbour))
-                {
-                    open.add(neighbour);
-                    nodeMap.put(neighbour, m);
-                }
-                else
-                if (open.contains(neighbour) && m.estimate() < nodeMap.get(neighbour).estimate())
-                {
-                    nodeMap.put(neighbour, m);
-                }
-                else
-                if (close.contains(neighbour) && m.estimate() < nodeMap.get(neighbour).estimate())
+                AreaJunctions junctions = state.getLinkJunctions(l);
+                for (int num : junctions.getTargets(state.getAreaID(n), state.getIndex(n)))
                 {
-                    nodeMap.put(neighbour, m);
-                    close.remove(neighbour);
-                    open.add(neighbour);
+                    expand(state, n, state.toLinkedKey(l, num), dest);
                 }
             }
         }
 
         int closestIdx = -1;
-        for (Node node : nodeMap.values())
+        for (int k=0; k<state.getVisitedCount(); ++k)
         {
-            if (node.estimate() == Double.POSITIVE_INFINITY) continue;
-            int i = pathIDs.lastIndexOf(node.getCell().first());
+            int key = state.getVisited(k);
+            if (state.estimate(key) == Double.POSITIVE_INFINITY) continue;
+            int i = pathIDs.lastIndexOf(state.getAreaID(key));
             if (i > closestIdx) closestIdx = i;
         }
 
@@ -108,46 +89,95 @@ public class PathPlanning
             dest = new Point2D((double)area.getX(), (double)area.getY());
         }
 
-        Point2D fdest = dest;
-        Node closest = nodeMap.values()
-            .stream()
-            .filter(n -> n.getCell().first().equals(closestID))
-            .min((n1, n2) -> {
-                Cell cell1 = toCell(n1.getCell(), areaCells);
-                Cell cell2 = toCell(n2.getCell(), areaCells);
-                Double d1 = GeometryTools2D.getDistance(cell1.getCentroid(), fdest);
-                Double d2 = GeometryTools2D.getDistance(cell2.getCentroid(), fdest);
-                return Double.compare(d1, d2);
-            })
-            .orElse(null);
-
-        if (closest == null) return new LinkedList<>();
-
-        return toPathElement(agent.getXY(), dest, closest, areaCells);
+        int closest = -1;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        for (int k=0; k<state.getVisitedCount(); ++k)
+        {
+            int key = state.getVisited(k);
+            if (!state.getAreaID(key).equals(closestID)) continue;
+
+            double d = GeometryTools2D.getDistance(state.getCell(key).getCentroid(), dest);
+            if (closest >= 0 && d >= closestDistance) continue;
+
+            closest = key;
+            closestDistance = d;
+        }
+
+        if (closest < 0) return new LinkedList<>();
+
+        return toPathElement(agent.getXY(), dest, closest, state, areaCells, graph);
+    }
+
+    private static final ThreadLocal<SearchState> STATE =
+        ThreadLocal.withInitial(SearchState::new);
+
+    //  relaxes the edge from node n to the cell of key m
+    private static void expand(
+        SearchState state,
+        int n,
+        int m,
+        Point2D dest)
+    {
+        int index = computeCorridorIndex(state, n, m);
+        double cost = computeCost(state, n, m, index);
+        double h = computeH(state.getCell(m).getCentroid(), dest);
+        double estimate = cost + h;
+
+        NodeHeap open = state.getOpen();
+        if (!state.isSeen(m))
+        {
+            state.setNode(m, n, cost, h, index);
+            open.add(m, estimate);
+        }
+        else
+        if (open.contains(m) && estimate < state.estimate(m))
+        {
+            state.setNode(m, n, cost, h, index);
+            open.decrease(m, estimate);
+        }
+        else
+        if (state.isClosed(m) && estimate < state.estimate(m))
+        {
+            state.setNode(m, n, cost, h, index);
+            state.setClosed(m, false);
+            open.add(m, estimate);
+        }
     }
 
-    private static int seekStartingNode(Point2D point, List<Cell> cells)
+    //  cell containing the point, or -1 if there is none
+    public static int seekStartingNode(Point2D point, List<Cell> cells)
     {
-        int candidate = computeClosest(point, cells);
-        if (candidate == -1) return -1;
-        Cell cell = cells.get(candidate);
+        int i = 0;
+        for (Cell cell : cells)
+        {
+            if (cell.contains(point.getX(), point.getY())) return i;
+            i++;
+        }
 
-        return cell.getShape().contains(point.getX(), point.getY())
-            ?   candidate : -1;
+        return -1;
     }
 
-    private static int computeClosest(Point2D point, List<Cell> cells)
+    //  cell containing the point, or the one closest to it if the point is
+    //  covered by a blockade or outside the area
+    private static int seekGoalNode(Point2D point, List<Cell> cells)
     {
-        return IntStream.range(0, cells.size())
-            .boxed()
-            .min((i1, i2) -> {
-                Point2D c1 = cells.get(i1).getCentroid();
-                Point2D c2 = cells.get(i2).getCentroid();
-                double d1 = GeometryTools2D.getDistance(point, c1);
-                double d2 = GeometryTools2D.getDistance(point, c2);
-                return Double.compare(d1, d2);
-            })
-            .orElse(-1);
+        int retval = seekStartingNode(point, cells);
+        if (retval >= 0) return retval;
+
+        double min = Double.POSITIVE_INFINITY;
+        int i = 0;
+        for (Cell cell : cells)
+        {
+            double d = cell.computeDistance(point.getX(), point.getY());
+            if (d < min)
+            {
+                retval = i;
+                min = d;
+            }
+            i++;
+        }
+
+        return retval;
     }
 
     private static double computeH(Point2D point1, Point2D point2)
@@ -155,26 +185,18 @@ public class PathPlanning
         return GeometryTools2D.getDistance(point1, point2);
     }
 
-    private static List<Pair<EntityID, Integer>> extractNeighbours(
-        Node node,
-        Map<EntityID, List<Cell>> areaCells)
+    private static Point2D findJunction(
+        Pair<EntityID, Integer> pair,
+        Pair<EntityID, Integer> other,
+        Map<EntityID, List<Cell>> areaCells,
+        CellGraph graph)
     {
-        EntityID id = node.getCell().first();
-        int num = node.getCell().second();
-
-        Cell cell = areaCells.get(id).get(num);
-        List<Pair<EntityID, Integer>> retval = new LinkedList<>();
+        if (pair.first().equals(other.first()))
+            return toCell(pair, areaCells).getJunctions().get(other.second());
 
-        cell.getJunctions().keySet()
-            .stream()
-            .map(i -> new Pair<>(id, i))
-            .forEach(n -> retval.add(n));
-
-        cell.getNeighbourJunctions().keySet()
-            .stream()
-            .forEach(n -> retval.add(n));
-
-        return retval;
+        return graph
+            .get(pair.first(), other.first())
+            .getJunction(pair.first(), pair.second(), other.second());
     }
 
     private static Cell toCell(
@@ -184,61 +206,75 @@ public class PathPlanning
         return areaCells.get(pair.first()).get(pair.second());
     }
 
-    private static double computeCost(
-        Node node,
-        Pair<EntityID, Integer> next,
-        Map<EntityID, List<Cell>> areaCells,
-        List<EntityID> path,
-        List<EntityID> idHistory)
+    //  the search stays on the requested path as long as every change of area
+    //  enters the next area of the path, and is free beyond its end
+    private static int computeCorridorIndex(SearchState state, int n, int m)
     {
-        Cell cell1 = toCell(node.getCell(), areaCells);
-        Cell cell2 = toCell(next, areaCells);
+        int index = state.getCorridorIndex(n);
+        if (index < 0) return -1;
+        if (state.getArea(n) == state.getArea(m)) return index;
 
-        for (int i=0; i<Math.min(path.size(), idHistory.size()); ++i)
-        {
-            EntityID id1 = path.get(i);
-            EntityID id2 = idHistory.get(i);
-            if (!id1.equals(id2)) return Double.POSITIVE_INFINITY;
-        }
+        index++;
+        if (index < state.getCorridorLength() &&
+            state.getCorridorArea(index) != state.getArea(m)) return -1;
+
+        return index;
+    }
+
+    private static double computeCost(SearchState state, int n, int m, int index)
+    {
+        if (index < 0) return Double.POSITIVE_INFINITY;
 
         double dist = GeometryTools2D.getDistance(
-            cell1.getCentroid(),
-            cell2.getCentroid());
+            state.getCell(n).getCentroid(),
+            state.getCell(m).getCentroid());
 
-        return node.getCost() + dist;
+        return state.getCost(n) + dist;
     }
 
-    private static List<EntityID> computeIDHistory(
-        Node node,
-        Pair<EntityID, Integer> next)
+    //  shared outline of two cells whose median is the junction between them
+    private static Line2D findPortal(
+        Pair<EntityID, Integer> pair,
+        Pair<EntityID, Integer> other,
+        Point2D junction,
+        Map<EntityID, List<Cell>> areaCells)
     {
-        if (node == null)
+        Line2D retval = null;
+        double min = Double.POSITIVE_INFINITY;
+
+        for (Line2D outline1 : toCell(pair, areaCells).getOutlines())
         {
-            List<EntityID> retval = new LinkedList<>();
-            retval.add(next.first());
-            return retval;
-        }
+            for (Line2D outline2 : toCell(other, areaCells).getOutlines())
+            {
+                Line2D overlapping = GeomUtil.computeOverlapping(outline1, outline2);
+                if (overlapping == null) continue;
 
-        List<EntityID> cloned = new LinkedList<>(node.getIDHistory());
-        if (cloned.isEmpty() || !cloned.get(cloned.size()-1).equals(next.first()))
-            cloned.add(next.first());
+                Point2D median = GeomUtil.makeMedian(overlapping);
+                double d = GeometryTools2D.getDistance(median, junction);
+                if (d >= min) continue;
 
-        return cloned;
+                retval = overlapping;
+                min = d;
+            }
+        }
+
+        return retval;
     }
 
     private static List<PathElement> toPathElement(
         Point2D from,
         Point2D dest,
-        Node last,
-        Map<EntityID, List<Cell>> areaCells)
+        int last,
+        SearchState state,
+        Map<EntityID, List<Cell>> areaCells,
+        CellGraph graph)
     {
         List<PathElement> retval = new LinkedList<>();
 
-        List<Pair<EntityID, Integer>> pathPair = new LinkedList<>();
-        while (last != null)
+        List<Pair<EntityID, Integer>> pathPair = new ArrayList<>();
+        for (; last >= 0; last = state.getParent(last))
         {
-            pathPair.add(last.getCell());
-            last = last.getParent();
+            pathPair.add(new Pair<>(state.getAreaID(last), state.getIndex(last)));
         }
         Collections.reverse(pathPair);
 
@@ -256,15 +292,13 @@ public class PathPlanning
             {
                 Pair<EntityID, Integer> pair = pathPair.get(i  );
                 Pair<EntityID, Integer> next = pathPair.get(i+1);
-                Cell cell = toCell(pair, areaCells);
 
-                Point2D junction = pair.first().equals(next.first())
-                    ?   cell.getJunctions().get(next.second())
-                    :   cell.getNeighbourJunctions().get(next);
+                Point2D junction = findJunction(pair, next, areaCells, graph);
 
                 PathElement elem = new PathElement(
                     pair.first(),
-                    new Line2D(from, junction));
+                    new Line2D(from, junction),
+                    findPortal(pair, next, junction, areaCells));
 
                 retval.add(elem);
                 continue;
@@ -274,11 +308,8 @@ public class PathPlanning
             {
                 Pair<EntityID, Integer> prev = pathPair.get(i-1);
                 Pair<EntityID, Integer> pair = pathPair.get(i  );
-                Cell cell = toCell(pair, areaCells);
 
-                Point2D junction = pair.first().equals(prev.first())
-                    ?   cell.getJunctions().get(prev.second())
-                    :   cell.getNeighbourJunctions().get(prev);
+                Point2D junction = findJunction(pair, prev, areaCells, graph);
 
                 PathElement elem = new PathElement(
                     pair.first(),
@@ -291,19 +322,14 @@ public class PathPlanning
             Pair<EntityID, Integer> prev = pathPair.get(i-1);
             Pair<EntityID, Integer> pair = pathPair.get(i  );
             Pair<EntityID, Integer> next = pathPair.get(i+1);
-            Cell cell = toCell(pair, areaCells);
-
-            Point2D junction1 = pair.first().equals(prev.first())
-                ?   cell.getJunctions().get(prev.second())
-                :   cell.getNeighbourJunctions().get(prev);
 
-            Point2D junction2 = pair.first().equals(next.first())
-                ?   cell.getJunctions().get(next.second())
-                :   cell.getNeighbourJunctions().get(next);
+            Point2D junction1 = findJunction(pair, prev, areaCells, graph);
+            Point2D junction2 = findJunction(pair, next, areaCells, graph);
 
             PathElement elem = new PathElement(
                 pair.first(),
-                new Line2D(junction1, junction2));
+                new Line2D(junction1, junction2),
+                findPortal(pair, next, junction2, areaCells));
 
             retval.add(elem);
         }
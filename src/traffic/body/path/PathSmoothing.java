@@ -0,0 +1,262 @@
+package traffic.body.path;
+
+import traffic.util.*;
+
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+
+//  string pulling through the portals of a planned path
+//  portals are narrowed by the agent radius at both ends, and the shortest
+//  polyline through them only bends at their narrowed end points
+public class PathSmoothing
+{
+    private static final double EPSILON = 1.0e-6;
+
+    public static List<PathElement> run(List<PathElement> path)
+    {
+        int n = path.size();
+        if (n < 2) return path;
+        for (int i=0; i<n-1; ++i)
+        {
+            if (path.get(i).getPortal() == null) return path;
+        }
+
+        //  portal i is between the elements i-1 and i, and the start and the
+        //  destination are closed portals at both ends
+        double[] lxs = new double[n+1];
+        double[] lys = new double[n+1];
+        double[] rxs = new double[n+1];
+        double[] rys = new double[n+1];
+
+        Point2D start = path.get(0).getLine().getOrigin();
+        Point2D dest = path.get(n-1).getLine().getEndPoint();
+        lxs[0] = rxs[0] = start.getX();
+        lys[0] = rys[0] = start.getY();
+        lxs[n] = rxs[n] = dest.getX();
+        lys[n] = rys[n] = dest.getY();
+
+        for (int i=1; i<n; ++i)
+            narrow(path.get(i-1), path.get(i), lxs, lys, rxs, rys, i);
+
+        List<Point2D> points = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        pull(lxs, lys, rxs, rys, points, indices);
+
+        List<PathElement> retval = new ArrayList<>(points.size()-1);
+        for (int j=0; j+1<points.size(); ++j)
+        {
+            int k1 = indices.get(j);
+            int k2 = indices.get(j+1);
+            Line2D line = new Line2D(points.get(j), points.get(j+1));
+            Line2D portal = k2 < n ? path.get(k2-1).getPortal() : null;
+
+            retval.add(new PathElement(path.get(k1).getID(), line, portal));
+        }
+
+        return retval;
+    }
+
+    //  smoothing of a path reusing an earlier smoothing of the same path from
+    //  another start in the same cell
+    //  the legs after the first corner do not depend on the start, so they
+    //  are kept as long as the first leg still passes the portals before the
+    //  corner and still bends around it the same way, and the path is pulled
+    //  again otherwise
+    public static List<PathElement> run(List<PathElement> path, List<PathElement> smoothed)
+    {
+        int n = path.size();
+        if (n < 2) return path;
+        for (int i=0; i<n-1; ++i)
+        {
+            if (path.get(i).getPortal() == null) return path;
+        }
+
+        PathElement first = smoothed.get(0);
+        int corner = n;
+        for (int i=0; i<n-1 && first.getPortal() != null; ++i)
+        {
+            if (path.get(i).getPortal() == first.getPortal()) corner = i+1;
+        }
+
+        Point2D start = path.get(0).getLine().getOrigin();
+        Point2D end = first.getLine().getEndPoint();
+
+        if (smoothed.size() >= 2)
+        {
+            Point2D prev = first.getLine().getOrigin();
+            Point2D next = smoothed.get(1).getLine().getEndPoint();
+            double bend1 = cross(
+                prev.getX(), prev.getY(), end.getX(), end.getY(), next.getX(), next.getY());
+            double bend2 = cross(
+                start.getX(), start.getY(), end.getX(), end.getY(), next.getX(), next.getY());
+            if (bend1*bend2 <= 0.0) return run(path);
+        }
+
+        double[] lxs = new double[corner];
+        double[] lys = new double[corner];
+        double[] rxs = new double[corner];
+        double[] rys = new double[corner];
+        for (int i=1; i<corner; ++i)
+        {
+            narrow(path.get(i-1), path.get(i), lxs, lys, rxs, rys, i);
+
+            if (!intersect(
+                    start.getX(), start.getY(), end.getX(), end.getY(),
+                    lxs[i], lys[i], rxs[i], rys[i])) return run(path);
+        }
+
+        List<PathElement> retval = new ArrayList<>(smoothed);
+        retval.set(0, new PathElement(
+            first.getID(), new Line2D(start, end), first.getPortal()));
+
+        return retval;
+    }
+
+    //  simple stupid funnel, which restarts from a corner as soon as one side
+    //  of the funnel crosses over the other
+    //  corners are added with the index of their portal
+    private static void pull(
+        double[] lxs, double[] lys, double[] rxs, double[] rys,
+        List<Point2D> points, List<Integer> indices)
+    {
+        int n = lxs.length-1;
+
+        double apexX = lxs[0];
+        double apexY = lys[0];
+        double leftX = apexX;
+        double leftY = apexY;
+        double rightX = apexX;
+        double rightY = apexY;
+        int apex = 0;
+        int left = 0;
+        int right = 0;
+
+        points.add(new Point2D(apexX, apexY));
+        indices.add(0);
+
+        for (int i=1; i<=n; ++i)
+        {
+            double lx = lxs[i];
+            double ly = lys[i];
+            double rx = rxs[i];
+            double ry = rys[i];
+
+            //  narrow the right side unless it crosses over the left one
+            if (cross(apexX, apexY, rightX, rightY, rx, ry) >= 0.0)
+            {
+                if (same(apexX, apexY, rightX, rightY) ||
+                    cross(apexX, apexY, leftX, leftY, rx, ry) < 0.0)
+                {
+                    rightX = rx;
+                    rightY = ry;
+                    right = i;
+                }
+                else
+                {
+                    apexX = rightX = leftX;
+                    apexY = rightY = leftY;
+                    apex = right = left;
+
+                    points.add(new Point2D(apexX, apexY));
+                    indices.add(apex);
+                    i = apex;
+                    continue;
+                }
+            }
+
+            //  narrow the left side unless it crosses over the right one
+            if (cross(apexX, apexY, leftX, leftY, lx, ly) <= 0.0)
+            {
+                if (same(apexX, apexY, leftX, leftY) ||
+                    cross(apexX, apexY, rightX, rightY, lx, ly) > 0.0)
+                {
+                    leftX = lx;
+                    leftY = ly;
+                    left = i;
+                }
+                else
+                {
+                    apexX = leftX = rightX;
+                    apexY = leftY = rightY;
+                    apex = left = right;
+
+                    points.add(new Point2D(apexX, apexY));
+                    indices.add(apex);
+                    i = apex;
+                    continue;
+                }
+            }
+        }
+
+        Point2D last = points.get(points.size()-1);
+        if (!same(last.getX(), last.getY(), lxs[n], lys[n]) || points.size() == 1)
+        {
+            points.add(new Point2D(lxs[n], lys[n]));
+            indices.add(n);
+        }
+    }
+
+    //  positive if (cx, cy) is left of the ray from (ax, ay) to (bx, by)
+    private static double cross(
+        double ax, double ay,
+        double bx, double by,
+        double cx, double cy)
+    {
+        return MathUtil.cross(bx-ax, by-ay, cx-ax, cy-ay);
+    }
+
+    //  whether the segments from a to b and from c to d meet
+    private static boolean intersect(
+        double ax, double ay, double bx, double by,
+        double cx, double cy, double dx, double dy)
+    {
+        double c1 = cross(ax, ay, bx, by, cx, cy);
+        double c2 = cross(ax, ay, bx, by, dx, dy);
+        double c3 = cross(cx, cy, dx, dy, ax, ay);
+        double c4 = cross(cx, cy, dx, dy, bx, by);
+
+        return c1*c2 <= 0.0 && c3*c4 <= 0.0;
+    }
+
+    private static boolean same(double ax, double ay, double bx, double by)
+    {
+        return Math.abs(ax-bx) < EPSILON && Math.abs(ay-by) < EPSILON;
+    }
+
+    private static void narrow(
+        PathElement before, PathElement after,
+        double[] lxs, double[] lys, double[] rxs, double[] rys, int i)
+    {
+        Line2D portal = before.getPortal();
+        double ax = portal.getOrigin().getX();
+        double ay = portal.getOrigin().getY();
+        double bx = portal.getEndPoint().getX();
+        double by = portal.getEndPoint().getY();
+
+        //  heading through the portal decides which end is on the left
+        Line2D line = before.getLine();
+        double hx = line.getEndPoint().getX() - line.getOrigin().getX();
+        double hy = line.getEndPoint().getY() - line.getOrigin().getY();
+        if (Math.hypot(hx, hy) < EPSILON)
+        {
+            line = after.getLine();
+            hx = line.getEndPoint().getX() - line.getOrigin().getX();
+            hy = line.getEndPoint().getY() - line.getOrigin().getY();
+        }
+        if (MathUtil.cross(hx, hy, ax-bx, ay-by) < 0.0)
+        {
+            double tx = ax; ax = bx; bx = tx;
+            double ty = ay; ay = by; by = ty;
+        }
+
+        double length = Math.hypot(bx-ax, by-ay);
+        double r = Environment.AGENT_RADIUS;
+        double t = length > 2.0*r ? r/length : 0.5;
+
+        lxs[i] = ax + (bx-ax)*t;
+        lys[i] = ay + (by-ay)*t;
+        rxs[i] = bx + (ax-bx)*t;
+        rys[i] = by + (ay-by)*t;
+    }
+}
@@ -0,0 +1,130 @@
+package traffic.body.path;
+
+import rescuecore2.worldmodel.EntityID;
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+
+//  plans of earlier moves keyed by start cell, requested areas and
+//  destination, which stay valid while the cells of every requested area
+//  are of the version they were planned on
+//  the least recently used plans are dropped beyond the capacity
+//  a smoothed plan is kept along with the planned one, and is only pulled
+//  again if it no longer fits the new start
+public class PlanCache
+{
+    private Map<Key, Plan> plans;
+
+    public PlanCache(int capacity)
+    {
+        this.plans = new LinkedHashMap<Key, Plan>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Plan> eldest)
+            {
+                return this.size() > capacity;
+            }
+        };
+    }
+
+    //  cached plan moved to start at from, or null without a valid plan
+    public List<PathElement> get(
+        int start,
+        List<EntityID> pathIDs,
+        Point2D dest,
+        int[] versions,
+        Point2D from)
+    {
+        Plan plan;
+        synchronized (this)
+        {
+            plan = this.plans.get(new Key(start, pathIDs, dest));
+        }
+        if (plan == null) return null;
+        if (!Arrays.equals(plan.versions, versions)) return null;
+
+        List<PathElement> retval = new ArrayList<>(plan.elements);
+        if (!retval.isEmpty())
+        {
+            PathElement first = retval.get(0);
+            Line2D line = new Line2D(from, first.getLine().getEndPoint());
+            retval.set(0, new PathElement(first.getID(), line, first.getPortal()));
+        }
+
+        if (plan.smoothed != null) retval = PathSmoothing.run(retval, plan.smoothed);
+
+        return retval;
+    }
+
+    //  smoothed is null if the plan is not smoothed
+    public synchronized void put(
+        int start,
+        List<EntityID> pathIDs,
+        Point2D dest,
+        int[] versions,
+        List<PathElement> elements,
+        List<PathElement> smoothed)
+    {
+        this.plans.put(
+            new Key(start, pathIDs, dest),
+            new Plan(
+                versions,
+                new ArrayList<>(elements),
+                smoothed == null ? null : new ArrayList<>(smoothed)));
+    }
+
+    private static class Key
+    {
+        private int start;
+        private List<EntityID> pathIDs;
+        private double destX;
+        private double destY;
+
+        public Key(int start, List<EntityID> pathIDs, Point2D dest)
+        {
+            this.start = start;
+            this.pathIDs = new ArrayList<>(pathIDs);
+            this.destX = dest.getX();
+            this.destY = dest.getY();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key)o;
+            return this.start == other.start &&
+                   this.destX == other.destX &&
+                   this.destY == other.destY &&
+                   this.pathIDs.equals(other.pathIDs);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int retval = this.start;
+            retval = 31*retval + Double.hashCode(this.destX);
+            retval = 31*retval + Double.hashCode(this.destY);
+            retval = 31*retval + this.pathIDs.hashCode();
+            return retval;
+        }
+    }
+
+    private static class Plan
+    {
+        private int[] versions;
+        private List<PathElement> elements;
+        private List<PathElement> smoothed;
+
+        public Plan(
+            int[] versions,
+            List<PathElement> elements,
+            List<PathElement> smoothed)
+        {
+            this.versions = versions;
+            this.elements = elements;
+            this.smoothed = smoothed;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package traffic.body.path;
+
+import traffic.body.geom.*;
+import traffic.util.*;
+
+import rescuecore2.worldmodel.EntityID;
+
+import java.util.*;
+
+//  reusable state of a path search over the cells of a set of areas
+//  a cell is keyed by the offset of its area plus its index within the area,
+//  and node data is only valid for keys seen since the last reset
+//  the requested path is kept as area indices, -1 for areas not searched,
+//  and every area is linked to its neighbours on the path by their junctions
+public class SearchState
+{
+    private IntIntMap areaIndices;
+    private EntityID[] areaIDs;
+    private int[] offsets;
+    private int areaCount;
+
+    private int[] corridor;
+    private int corridorLength;
+
+    private int[] linkStarts;
+    private int[] linkAreas;
+    private AreaJunctions[] linkJunctions;
+    private int[] pairFroms;
+    private int[] pairAreas;
+    private AreaJunctions[] pairJunctions;
+
+    private Cell[] cells;
+    private int[] areas;
+    private int keyCount;
+
+    private double[] costs;
+    private double[] heuristics;
+    private int[] parents;
+    private int[] corridorIndices;
+
+    private int[] seen;
+    private int[] closed;
+    private int generation;
+
+    private int[] visited;
+    private int visitedCount;
+
+    private NodeHeap open;
+
+    public SearchState()
+    {
+        this.areaIndices = new IntIntMap();
+        this.areaIDs = new EntityID[8];
+        this.offsets = new int[9];
+        this.corridor = new int[8];
+        this.linkStarts = new int[9];
+        this.linkAreas = new int[16];
+        this.linkJunctions = new AreaJunctions[16];
+        this.pairFroms = new int[16];
+        this.pairAreas = new int[16];
+        this.pairJunctions = new AreaJunctions[16];
+
+        this.cells = new Cell[0];
+        this.areas = new int[0];
+        this.costs = new double[0];
+        this.heuristics = new double[0];
+        this.parents = new int[0];
+        this.corridorIndices = new int[0];
+        this.seen = new int[0];
+        this.closed = new int[0];
+        this.visited = new int[0];
+        this.generation = 0;
+
+        this.open = new NodeHeap();
+    }
+
+    public void reset(
+        Map<EntityID, List<Cell>> areaCells,
+        List<EntityID> pathIDs,
+        CellGraph graph)
+    {
+        this.areaIndices.clear();
+        this.areaCount = 0;
+        this.keyCount = 0;
+
+        if (this.areaIDs.length < areaCells.size())
+        {
+            this.areaIDs = new EntityID[areaCells.size()];
+            this.offsets = new int[areaCells.size()+1];
+        }
+
+        for (Map.Entry<EntityID, List<Cell>> entry : areaCells.entrySet())
+        {
+            this.areaIndices.put(entry.getKey().getValue(), this.areaCount);
+            this.areaIDs[this.areaCount] = entry.getKey();
+            this.offsets[this.areaCount] = this.keyCount;
+            this.areaCount++;
+            this.keyCount += entry.getValue().size();
+        }
+        this.offsets[this.areaCount] = this.keyCount;
+
+        if (this.corridor.length < pathIDs.size())
+            this.corridor = new int[pathIDs.size()];
+        this.corridorLength = 0;
+        for (EntityID id : pathIDs)
+            this.corridor[this.corridorLength++] = this.areaIndices.get(id.getValue());
+
+        this.link(pathIDs, graph);
+
+        this.ensure(this.keyCount);
+        for (int a=0; a<this.areaCount; ++a)
+        {
+            int key = this.offsets[a];
+            for (Cell cell : areaCells.get(this.areaIDs[a]))
+            {
+                this.cells[key] = cell;
+                this.areas[key] = a;
+                key++;
+            }
+        }
+
+        this.generation++;
+        if (this.generation == 0)
+        {
+            Arrays.fill(this.seen, 0);
+            Arrays.fill(this.closed, 0);
+            this.generation = 1;
+        }
+
+        this.visitedCount = 0;
+        this.open.clear();
+    }
+
+    //  key of the num-th cell of an area, or -1 if the area is not searched
+    public int toKey(EntityID id, int num)
+    {
+        int a = this.areaIndices.get(id.getValue());
+        return a < 0 ? -1 : this.offsets[a] + num;
+    }
+
+    //  key of the num-th cell of the area of a key
+    public int toSiblingKey(int key, int num)
+    {
+        return this.offsets[this.areas[key]] + num;
+    }
+
+    public Cell getCell(int key)
+    {
+        return this.cells[key];
+    }
+
+    public EntityID getAreaID(int key)
+    {
+        return this.areaIDs[this.areas[key]];
+    }
+
+    public int getArea(int key)
+    {
+        return this.areas[key];
+    }
+
+    public int getCorridorLength()
+    {
+        return this.corridorLength;
+    }
+
+    public int getCorridorArea(int i)
+    {
+        return this.corridor[i];
+    }
+
+    public int getIndex(int key)
+    {
+        return key - this.offsets[this.areas[key]];
+    }
+
+    //  links of the area of a key are in [getFirstLink, getLastLink)
+    public int getFirstLink(int key)
+    {
+        return this.linkStarts[this.areas[key]];
+    }
+
+    public int getLastLink(int key)
+    {
+        return this.linkStarts[this.areas[key]+1];
+    }
+
+    public AreaJunctions getLinkJunctions(int l)
+    {
+        return this.linkJunctions[l];
+    }
+
+    //  key of the num-th cell of the area at the other end of a link
+    public int toLinkedKey(int l, int num)
+    {
+        return this.offsets[this.linkAreas[l]] + num;
+    }
+
+    public NodeHeap getOpen()
+    {
+        return this.open;
+    }
+
+    public boolean isSeen(int key)
+    {
+        return this.seen[key] == this.generation;
+    }
+
+    public boolean isClosed(int key)
+    {
+        return this.closed[key] == this.generation;
+    }
+
+    public void setClosed(int key, boolean closed)
+    {
+        this.closed[key] = closed ? this.generation : 0;
+    }
+
+    public void setNode(int key, int parent, double cost, double heuristic, int corridorIndex)
+    {
+        if (!this.isSeen(key))
+        {
+            this.seen[key] = this.generation;
+            this.visited[this.visitedCount++] = key;
+        }
+
+        this.parents[key] = parent;
+        this.costs[key] = cost;
+        this.heuristics[key] = heuristic;
+        this.corridorIndices[key] = corridorIndex;
+    }
+
+    public int getParent(int key)
+    {
+        return this.parents[key];
+    }
+
+    public double getCost(int key)
+    {
+        return this.costs[key];
+    }
+
+    public double getHeuristic(int key)
+    {
+        return this.heuristics[key];
+    }
+
+    public double estimate(int key)
+    {
+        return this.costs[key] + this.heuristics[key];
+    }
+
+    //  index in the requested path of the area of the node, counting every
+    //  change of area on the way there, or -1 if the way left the path
+    public int getCorridorIndex(int key)
+    {
+        return this.corridorIndices[key];
+    }
+
+    //  seen keys in the order they were first seen
+    public int getVisitedCount()
+    {
+        return this.visitedCount;
+    }
+
+    public int getVisited(int k)
+    {
+        return this.visited[k];
+    }
+
+    //  links every area to the areas before and after it on the path, once
+    //  per pair, grouped by area in path order
+    private void link(List<EntityID> pathIDs, CellGraph graph)
+    {
+        int capacity = 2*this.corridorLength;
+        if (this.linkStarts.length < this.areaCount+1)
+            this.linkStarts = new int[this.areaCount+1];
+        if (this.linkAreas.length < capacity)
+        {
+            this.linkAreas = new int[capacity];
+            this.linkJunctions = new AreaJunctions[capacity];
+            this.pairFroms = new int[capacity];
+            this.pairAreas = new int[capacity];
+            this.pairJunctions = new AreaJunctions[capacity];
+        }
+
+        int count = 0;
+        Arrays.fill(this.linkStarts, 0, this.areaCount+1, 0);
+        for (int i=0; i+1<this.corridorLength; ++i)
+        {
+            int a1 = this.corridor[i];
+            int a2 = this.corridor[i+1];
+            if (a1 < 0 || a2 < 0) continue;
+
+            boolean linked = false;
+            for (int l=0; l<count && !linked; ++l)
+                linked = this.pairFroms[l] == a1 && this.pairAreas[l] == a2;
+            if (linked) continue;
+
+            AreaJunctions junctions = graph.get(pathIDs.get(i), pathIDs.get(i+1));
+            if (junctions == null) continue;
+
+            this.pairFroms[count] = a1;
+            this.pairAreas[count] = a2;
+            this.pairJunctions[count++] = junctions;
+            this.linkStarts[a1+1]++;
+            if (a1 == a2) continue;
+
+            this.pairFroms[count] = a2;
+            this.pairAreas[count] = a1;
+            this.pairJunctions[count++] = junctions;
+            this.linkStarts[a2+1]++;
+        }
+
+        //  counting sort by area, using the start of every area as its cursor
+        //  and shifting the starts back afterwards
+        for (int a=0; a<this.areaCount; ++a)
+            this.linkStarts[a+1] += this.linkStarts[a];
+        for (int l=0; l<count; ++l)
+        {
+            int k = this.linkStarts[this.pairFroms[l]]++;
+            this.linkAreas[k] = this.pairAreas[l];
+            this.linkJunctions[k] = this.pairJunctions[l];
+        }
+        for (int a=this.areaCount; a>0; --a)
+            this.linkStarts[a] = this.linkStarts[a-1];
+        this.linkStarts[0] = 0;
+    }
+
+    private void ensure(int capacity)
+    {
+        if (capacity <= this.cells.length) return;
+
+        int old = this.cells.length;
+        capacity = Math.max(capacity, old*2);
+
+        this.cells = Arrays.copyOf(this.cells, capacity);
+        this.areas = Arrays.copyOf(this.areas, capacity);
+        this.costs = Arrays.copyOf(this.costs, capacity);
+        this.heuristics = Arrays.copyOf(this.heuristics, capacity);
+        this.parents = Arrays.copyOf(this.parents, capacity);
+        this.corridorIndices = Arrays.copyOf(this.corridorIndices, capacity);
+        this.seen = Arrays.copyOf(this.seen, capacity);
+        this.closed = Arrays.copyOf(this.closed, capacity);
+        this.visited = Arrays.copyOf(this.visited, capacity);
+    }
+}
@@ -0,0 +1,104 @@
+package traffic.body.time;
+
+import java.util.*;
+
+//  uniform spatial hash over agent positions
+//  buckets are singly linked lists threaded through agent indices
+public class AgentGrid
+{
+    private static final int EMPTY = -1;
+
+    private double size;
+
+    private long[] keys;
+    private int[] heads;
+    private int mask;
+
+    private int[] cellXs;
+    private int[] cellYs;
+    private int[] nexts;
+
+    public AgentGrid(double size, int capacity)
+    {
+        this.size = size;
+        this.allocate(capacity);
+    }
+
+    public void rebuild(double[] xs, double[] ys, int n)
+    {
+        if (this.nexts.length < n) this.allocate(n);
+        Arrays.fill(this.heads, EMPTY);
+
+        for (int i=n-1; i>=0; --i)
+        {
+            int cx = this.toCell(xs[i]);
+            int cy = this.toCell(ys[i]);
+            this.cellXs[i] = cx;
+            this.cellYs[i] = cy;
+
+            int slot = this.seekSlot(cx, cy);
+            this.keys[slot] = toKey(cx, cy);
+            this.nexts[i] = this.heads[slot];
+            this.heads[slot] = i;
+        }
+    }
+
+    public int getHead(int cx, int cy)
+    {
+        return this.heads[this.seekSlot(cx, cy)];
+    }
+
+    public int getNext(int i)
+    {
+        return this.nexts[i];
+    }
+
+    public int getCellX(int i)
+    {
+        return this.cellXs[i];
+    }
+
+    public int getCellY(int i)
+    {
+        return this.cellYs[i];
+    }
+
+    private int toCell(double v)
+    {
+        return (int)Math.floor(v / this.size);
+    }
+
+    private int seekSlot(int cx, int cy)
+    {
+        long key = toKey(cx, cy);
+        int slot = hash(key) & this.mask;
+        while (this.heads[slot] != EMPTY && this.keys[slot] != key)
+            slot = (slot+1) & this.mask;
+
+        return slot;
+    }
+
+    private void allocate(int capacity)
+    {
+        int slots = Integer.highestOneBit(Math.max(capacity, 8)*2-1) << 1;
+        this.keys = new long[slots];
+        this.heads = new int[slots];
+        this.mask = slots - 1;
+        Arrays.fill(this.heads, EMPTY);
+
+        this.cellXs = new int[capacity];
+        this.cellYs = new int[capacity];
+        this.nexts = new int[capacity];
+    }
+
+    private static long toKey(int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static int hash(long key)
+    {
+        key *= 0x9e3779b97f4a7c15L;
+        return (int)(key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,343 @@
+package traffic.body.time;
+
+import traffic.body.path.*;
+
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+
+//  packed primitive state of agents indexed by a dense agent index
+//  agents are only read at load and written at store, and a microstep
+//  reads the current buffer and writes the next one before swapping
+public class AgentState
+{
+    private static final int MOVABLE = 1;
+    private static final int COLOCATED = 2;
+    private static final int ACTIVE = 4;
+
+    private List<Agent> agents;
+    private int n;
+
+    private double[] xs;
+    private double[] ys;
+    private double[] vxs;
+    private double[] vys;
+
+    private double[] nextXs;
+    private double[] nextYs;
+    private double[] nextVXs;
+    private double[] nextVYs;
+
+    private double[] limits;
+    private int[] flags;
+
+    private int[] actives;
+    private int activeCount;
+
+    private double[] agentsForceXs;
+    private double[] agentsForceYs;
+    private double[] destinationForceXs;
+    private double[] destinationForceYs;
+    private double[] wallsForceXs;
+    private double[] wallsForceYs;
+    private double[] forceXs;
+    private double[] forceYs;
+
+    private double[] savedXs;
+    private double[] savedYs;
+    private double[] savedVXs;
+    private double[] savedVYs;
+    private double[] savedForceXs;
+    private double[] savedForceYs;
+
+    public AgentState(List<Agent> agents)
+    {
+        this.agents = agents;
+        this.n = agents.size();
+
+        this.xs = new double[this.n];
+        this.ys = new double[this.n];
+        this.vxs = new double[this.n];
+        this.vys = new double[this.n];
+
+        this.nextXs = new double[this.n];
+        this.nextYs = new double[this.n];
+        this.nextVXs = new double[this.n];
+        this.nextVYs = new double[this.n];
+
+        this.limits = new double[this.n];
+        this.flags = new int[this.n];
+
+        this.actives = new int[this.n];
+        this.activeCount = 0;
+
+        this.agentsForceXs = new double[this.n];
+        this.agentsForceYs = new double[this.n];
+        this.destinationForceXs = new double[this.n];
+        this.destinationForceYs = new double[this.n];
+        this.wallsForceXs = new double[this.n];
+        this.wallsForceYs = new double[this.n];
+        this.forceXs = new double[this.n];
+        this.forceYs = new double[this.n];
+
+        this.savedXs = new double[this.n];
+        this.savedYs = new double[this.n];
+        this.savedVXs = new double[this.n];
+        this.savedVYs = new double[this.n];
+        this.savedForceXs = new double[this.n];
+        this.savedForceYs = new double[this.n];
+    }
+
+    public int size()
+    {
+        return this.n;
+    }
+
+    public Agent getAgent(int i)
+    {
+        return this.agents.get(i);
+    }
+
+    public void load()
+    {
+        for (int i=0; i<this.n; ++i)
+        {
+            Agent agent = this.agents.get(i);
+            this.xs[i] = agent.getXY().getX();
+            this.ys[i] = agent.getXY().getY();
+            this.vxs[i] = agent.getVelocity().getX();
+            this.vys[i] = agent.getVelocity().getY();
+            this.limits[i] = agent.getVelocityLimit();
+            this.flags[i] = agent.canMove() ? MOVABLE : 0;
+        }
+    }
+
+    public void store()
+    {
+        for (int i=0; i<this.n; ++i)
+        {
+            Agent agent = this.agents.get(i);
+            agent.setVelocity(new Vector2D(this.vxs[i], this.vys[i]));
+            agent.setColocated(this.isColocated(i));
+            agent.setXY(this.xs[i], this.ys[i]);
+        }
+    }
+
+    public void swap()
+    {
+        double[] tmp;
+        tmp = this.xs;  this.xs  = this.nextXs;  this.nextXs  = tmp;
+        tmp = this.ys;  this.ys  = this.nextYs;  this.nextYs  = tmp;
+        tmp = this.vxs; this.vxs = this.nextVXs; this.nextVXs = tmp;
+        tmp = this.vys; this.vys = this.nextVYs; this.nextVYs = tmp;
+    }
+
+    public double[] getXs()
+    {
+        return this.xs;
+    }
+
+    public double[] getYs()
+    {
+        return this.ys;
+    }
+
+    public double getX(int i)
+    {
+        return this.xs[i];
+    }
+
+    public double getY(int i)
+    {
+        return this.ys[i];
+    }
+
+    public double getVX(int i)
+    {
+        return this.vxs[i];
+    }
+
+    public double getVY(int i)
+    {
+        return this.vys[i];
+    }
+
+    public double getVelocityLimit(int i)
+    {
+        return this.limits[i];
+    }
+
+    public boolean isMovable(int i)
+    {
+        return (this.flags[i] & MOVABLE) != 0;
+    }
+
+    public boolean isColocated(int i)
+    {
+        return (this.flags[i] & COLOCATED) != 0;
+    }
+
+    public void setColocated(int i, boolean colocated)
+    {
+        if (colocated) this.flags[i] |= COLOCATED;
+        else this.flags[i] &= ~COLOCATED;
+    }
+
+    //  agents simulated in the current microstep in index order
+    public void clearActive()
+    {
+        for (int k=0; k<this.activeCount; ++k)
+            this.flags[this.actives[k]] &= ~ACTIVE;
+        this.activeCount = 0;
+    }
+
+    public void addActive(int i)
+    {
+        this.flags[i] |= ACTIVE;
+        this.actives[this.activeCount++] = i;
+    }
+
+    public boolean isActive(int i)
+    {
+        return (this.flags[i] & ACTIVE) != 0;
+    }
+
+    public int getActiveCount()
+    {
+        return this.activeCount;
+    }
+
+    public int getActive(int k)
+    {
+        return this.actives[k];
+    }
+
+    //  keeps an inactive agent where it is with zero velocity in both
+    //  buffers, so that it stays unchanged however often they are swapped
+    public void hold(int i)
+    {
+        this.vxs[i] = 0.0;
+        this.vys[i] = 0.0;
+        this.setNext(i, this.xs[i], this.ys[i], 0.0, 0.0);
+    }
+
+    public void setNext(int i, double x, double y, double vx, double vy)
+    {
+        this.nextXs[i] = x;
+        this.nextYs[i] = y;
+        this.nextVXs[i] = vx;
+        this.nextVYs[i] = vy;
+    }
+
+    public double getAgentsForceX(int i)
+    {
+        return this.agentsForceXs[i];
+    }
+
+    public double getAgentsForceY(int i)
+    {
+        return this.agentsForceYs[i];
+    }
+
+    public void setAgentsForce(int i, double fx, double fy)
+    {
+        this.agentsForceXs[i] = fx;
+        this.agentsForceYs[i] = fy;
+    }
+
+    public void addAgentsForce(int i, double fx, double fy)
+    {
+        this.agentsForceXs[i] += fx;
+        this.agentsForceYs[i] += fy;
+    }
+
+    public double getDestinationForceX(int i)
+    {
+        return this.destinationForceXs[i];
+    }
+
+    public double getDestinationForceY(int i)
+    {
+        return this.destinationForceYs[i];
+    }
+
+    public void setDestinationForce(int i, double fx, double fy)
+    {
+        this.destinationForceXs[i] = fx;
+        this.destinationForceYs[i] = fy;
+    }
+
+    public double getWallsForceX(int i)
+    {
+        return this.wallsForceXs[i];
+    }
+
+    public double getWallsForceY(int i)
+    {
+        return this.wallsForceYs[i];
+    }
+
+    public void setWallsForce(int i, double fx, double fy)
+    {
+        this.wallsForceXs[i] = fx;
+        this.wallsForceYs[i] = fy;
+    }
+
+    public double getForceX(int i)
+    {
+        return this.forceXs[i];
+    }
+
+    public double getForceY(int i)
+    {
+        return this.forceYs[i];
+    }
+
+    public void setForce(int i, double fx, double fy)
+    {
+        this.forceXs[i] = fx;
+        this.forceYs[i] = fy;
+    }
+
+    //  keeps the current state and force of an agent for the later stages
+    //  of a microstep
+    public void save(int i)
+    {
+        this.savedXs[i] = this.xs[i];
+        this.savedYs[i] = this.ys[i];
+        this.savedVXs[i] = this.vxs[i];
+        this.savedVYs[i] = this.vys[i];
+        this.savedForceXs[i] = this.forceXs[i];
+        this.savedForceYs[i] = this.forceYs[i];
+    }
+
+    public double getSavedX(int i)
+    {
+        return this.savedXs[i];
+    }
+
+    public double getSavedY(int i)
+    {
+        return this.savedYs[i];
+    }
+
+    public double getSavedVX(int i)
+    {
+        return this.savedVXs[i];
+    }
+
+    public double getSavedVY(int i)
+    {
+        return this.savedVYs[i];
+    }
+
+    public double getSavedForceX(int i)
+    {
+        return this.savedForceXs[i];
+    }
+
+    public double getSavedForceY(int i)
+    {
+        return this.savedForceYs[i];
+    }
+}
@@ -0,0 +1,11 @@
+package traffic.body.time;
+
+//  arithmetic of the agent-agent repulsion and of the wall stop force
+public interface ForceKernel
+{
+    //  adds the repulsion of agents js[0, n) on agent i to its agents force
+    //  and marks agent i colocated if one of them shares its position
+    public void accumulateAgentsForce(AgentState state, int i, int[] js, int n);
+
+    public double exp(double x);
+}
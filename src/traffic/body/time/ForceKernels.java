@@ -0,0 +1,47 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+import rescuecore2.log.Logger;
+
+//  picks the vector kernel if it is enabled and jdk.incubator.vector is
+//  present in the boot layer, and the scalar kernel otherwise
+//  deterministic microsteps always use the scalar kernel, as the order of
+//  the lane-wise sums depends on the vector width of the machine
+public class ForceKernels
+{
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "traffic.body.time.VectorForceKernel";
+
+    private static ForceKernel kernel = null;
+
+    public static synchronized ForceKernel get()
+    {
+        if (kernel == null) kernel = select();
+        return kernel;
+    }
+
+    private static ForceKernel select()
+    {
+        if (!Environment.VECTOR_KERNEL || Environment.DETERMINISTIC_MICROSTEP)
+            return new ScalarForceKernel();
+
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent())
+        {
+            Logger.warn(VECTOR_MODULE + " is not present, using scalar kernel");
+            return new ScalarForceKernel();
+        }
+
+        try
+        {
+            return (ForceKernel)Class.forName(VECTOR_KERNEL)
+                .getDeclaredConstructor()
+                .newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            Logger.warn("vector kernel is not available, using scalar kernel", e);
+            return new ScalarForceKernel();
+        }
+    }
+}
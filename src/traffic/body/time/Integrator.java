@@ -0,0 +1,13 @@
+package traffic.body.time;
+
+//  advances the active agents of a state by one microstep
+//  a step may evaluate the forces more than once, at the positions it
+//  swapped in, and leaves the result in the current buffer of the state
+public interface Integrator
+{
+    //  largest microstep in ms that stays stable with the force
+    //  coefficients in Environment
+    public double getMaxStableTime();
+
+    public void step(AgentState state, double dt, WallSet[] walls, AgentGrid grid);
+}
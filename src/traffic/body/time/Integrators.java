@@ -0,0 +1,47 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+import rescuecore2.log.Logger;
+
+public class Integrators
+{
+    //  fraction of the stability limit used as the largest microstep
+    public static final double SAFETY = 0.5;
+
+    private static Integrator integrator = null;
+
+    public static synchronized Integrator get()
+    {
+        if (integrator == null) integrator = create(Environment.INTEGRATOR);
+        return integrator;
+    }
+
+    public static Integrator create(String name)
+    {
+        switch (name)
+        {
+            case "euler":
+                return new SemiImplicitEuler();
+            case "verlet":
+                return new VelocityVerlet();
+            case "rk2":
+                return new MidpointRK2();
+            default:
+                Logger.warn("unknown integrator " + name + ", using euler");
+                return new SemiImplicitEuler();
+        }
+    }
+
+    //  angular frequency of the stiffest agent-agent contact, where the
+    //  repulsion is steepest at full overlap and the contact spring adds to it
+    public static double getContactFrequency()
+    {
+        double a = Environment.AGENT_FORCE_COEF_A;
+        double b = Environment.AGENT_FORCE_COEF_B;
+        double k = Environment.AGENT_FORCE_COEF_K;
+        double totalr = Environment.AGENT_RADIUS*2.0;
+
+        return Math.sqrt(a*b*Math.exp(totalr*b) + k);
+    }
+}
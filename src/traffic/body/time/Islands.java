@@ -0,0 +1,73 @@
+package traffic.body.time;
+
+import java.util.*;
+
+//  union-find over agent indices
+public class Islands
+{
+    private int[] parents;
+    private int[] sizes;
+
+    public Islands(int n)
+    {
+        this.parents = new int[n];
+        this.sizes = new int[n];
+        for (int i=0; i<n; ++i)
+        {
+            this.parents[i] = i;
+            this.sizes[i] = 1;
+        }
+    }
+
+    public int find(int i)
+    {
+        while (this.parents[i] != i)
+        {
+            this.parents[i] = this.parents[this.parents[i]];
+            i = this.parents[i];
+        }
+
+        return i;
+    }
+
+    public void union(int i, int j)
+    {
+        i = this.find(i);
+        j = this.find(j);
+        if (i == j) return;
+
+        if (this.sizes[i] < this.sizes[j])
+        {
+            int tmp = i; i = j; j = tmp;
+        }
+
+        this.parents[j] = i;
+        this.sizes[i] += this.sizes[j];
+    }
+
+    //  members of every island in ascending index order, largest island first
+    public List<int[]> getGroups()
+    {
+        int n = this.parents.length;
+        int[] slots = new int[n];
+        Arrays.fill(slots, -1);
+
+        List<int[]> retval = new ArrayList<>();
+        int[] counts = new int[n];
+        for (int i=0; i<n; ++i)
+        {
+            int root = this.find(i);
+            if (slots[root] < 0)
+            {
+                slots[root] = retval.size();
+                retval.add(new int[this.sizes[root]]);
+            }
+
+            int slot = slots[root];
+            retval.get(slot)[counts[slot]++] = i;
+        }
+
+        retval.sort((a, b) -> Integer.compare(b.length, a.length));
+        return retval;
+    }
+}
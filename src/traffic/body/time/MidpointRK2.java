@@ -0,0 +1,53 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+//  evaluates the forces again after half a microstep and takes the whole
+//  microstep from the start with the forces and the velocity at that midpoint
+//  on the contact oscillation, every step grows the amplitude by about
+//  (w*dt)^4/8, which the relaxation toward the destination velocity has to
+//  damp, so dt^3 < 8*c/w^4 besides c*dt < 2
+public class MidpointRK2 implements Integrator
+{
+    @Override
+    public double getMaxStableTime()
+    {
+        double w = Integrators.getContactFrequency();
+        double c = Environment.DESTINATION_FORCE_COEF;
+
+        double growth = Math.cbrt(8.0*c / (w*w*w*w));
+        return Integrators.SAFETY * Math.min(growth, 2.0/c);
+    }
+
+    @Override
+    public void step(AgentState state, double dt, WallSet[] walls, AgentGrid grid)
+    {
+        double half = 0.5*dt;
+
+        Time.evaluate(state, half, walls, grid);
+        Time.forEachActive(state, i -> {
+            state.save(i);
+
+            double vx = state.getVX(i);
+            double vy = state.getVY(i);
+
+            Time.advance(
+                state, i, state.getX(i), state.getY(i), half,
+                vx, vy, vx + half*state.getForceX(i), vy + half*state.getForceY(i),
+                walls[i], false);
+        });
+        state.swap();
+
+        grid.rebuild(state.getXs(), state.getYs(), state.size());
+        Time.evaluate(state, dt, walls, grid);
+        Time.forEachActive(state, i -> {
+            double vx = state.getSavedVX(i) + dt*state.getForceX(i);
+            double vy = state.getSavedVY(i) + dt*state.getForceY(i);
+
+            Time.advance(
+                state, i, state.getSavedX(i), state.getSavedY(i), dt,
+                state.getVX(i), state.getVY(i), vx, vy, walls[i], true);
+        });
+        state.swap();
+    }
+}
@@ -0,0 +1,68 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+public class ScalarForceKernel implements ForceKernel
+{
+    @Override
+    public void accumulateAgentsForce(AgentState state, int i, int[] js, int n)
+    {
+        for (int k=0; k<n; ++k) accumulate(state, i, js[k], false);
+    }
+
+    @Override
+    public double exp(double x)
+    {
+        return Math.exp(x);
+    }
+
+    //  with symmetric, the opposite force is also applied to agent j
+    public static void accumulate(
+        AgentState state,
+        int i,
+        int j,
+        boolean symmetric)
+    {
+        boolean movable1 = state.isMovable(i);
+        boolean movable2 = symmetric && state.isMovable(j);
+        if (!movable1 && !movable2) return;
+
+        double cutoff = Environment.AGENT_DISTANCE_CUTOFF;
+        double a = Environment.AGENT_FORCE_COEF_A;
+        double b = Environment.AGENT_FORCE_COEF_B;
+        double k = Environment.AGENT_FORCE_COEF_K;
+
+        double dx = state.getX(j) - state.getX(i);
+        if (Math.abs(dx) > cutoff) return;
+        double dy = state.getY(j) - state.getY(i);
+        if (Math.abs(dy) > cutoff) return;
+
+        double totalr = Environment.AGENT_RADIUS*2.0;
+        double dist = Math.hypot(dx, dy);
+
+        if (dist == 0.0)
+        {
+            if (movable1) state.setColocated(i, true);
+            if (movable2) state.setColocated(j, true);
+            return;
+        }
+
+        double dxn = dx / dist;
+        double dyn = dy / dist;
+
+        double negativeSeparation = totalr - dist;
+        double tmp = -a * Math.exp(negativeSeparation * b);
+
+        double fx = tmp * dxn;
+        double fy = tmp * dyn;
+
+        if (negativeSeparation > 0.0)
+        {
+            fx += -k * negativeSeparation * dxn;
+            fy += -k * negativeSeparation * dyn;
+        }
+
+        if (movable1) state.addAgentsForce(i, +fx, +fy);
+        if (movable2) state.addAgentsForce(j, -fx, -fy);
+    }
+}
@@ -0,0 +1,34 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+//  updates the velocity with the forces at the microstep start and moves
+//  the agent with the new velocity
+//  stable for w*dt < 2 on the contact oscillation and for c*dt < 2 on the
+//  relaxation toward the destination velocity
+public class SemiImplicitEuler implements Integrator
+{
+    @Override
+    public double getMaxStableTime()
+    {
+        double w = Integrators.getContactFrequency();
+        double c = Environment.DESTINATION_FORCE_COEF;
+
+        return Integrators.SAFETY * Math.min(2.0/w, 2.0/c);
+    }
+
+    @Override
+    public void step(AgentState state, double dt, WallSet[] walls, AgentGrid grid)
+    {
+        Time.evaluate(state, dt, walls, grid);
+        Time.forEachActive(state, i -> {
+            double vx = state.getVX(i) + dt*state.getForceX(i);
+            double vy = state.getVY(i) + dt*state.getForceY(i);
+
+            Time.advance(
+                state, i, state.getX(i), state.getY(i), dt,
+                vx, vy, vx, vy, walls[i], true);
+        });
+        state.swap();
+    }
+}
@@ -8,154 +8,458 @@ import rescuecore2.standard.entities.*;
 import rescuecore2.misc.geometry.*;
 
 import java.util.*;
+import java.util.function.*;
 import java.util.stream.*;
 
 public class Time
 {
     private static final int MICROSTEPS = 600;
     private static final double MICROSTEP_TIME_MS = 100.0;
+    private static final int COLLISION_ITERATIONS = 3;
 
-    public static void run(Collection<Agent> agents, StandardWorldModel model)
+    public static void run(
+        Collection<Agent> agents,
+        WallIndex wallIndex,
+        StandardWorldModel model)
+    {
+        List<Agent> indexed = agents
+            .stream()
+            .filter(a -> a.getXY() != null)
+            .collect(Collectors.toList());
+
+        List<List<Agent>> islands =
+            partition(indexed, MICROSTEPS*MICROSTEP_TIME_MS);
+
+        WorkerPool.forEach(
+            islands.size(),
+            k -> simulate(islands.get(k), wallIndex, model));
+    }
+
+    private static void simulate(
+        List<Agent> agents,
+        WallIndex wallIndex,
+        StandardWorldModel model)
+    {
+        WallSet[] walls = new WallSet[agents.size()];
+        for (int i=0; i<agents.size(); ++i)
+        {
+            Agent agent = agents.get(i);
+            walls[i] = new WallSet(agent.hasPath() ? wallIndex : null);
+        }
+
+        AgentState state = new AgentState(agents);
+        AgentGrid grid =
+            new AgentGrid(Environment.AGENT_DISTANCE_CUTOFF, agents.size());
+
+        Integrator integrator = Integrators.get();
+        int microsteps = MICROSTEPS;
+        double dt = MICROSTEP_TIME_MS;
+        if (Environment.ADAPTIVE_MICROSTEP)
+        {
+            double duration = MICROSTEPS*MICROSTEP_TIME_MS;
+            microsteps = computeMicrosteps(agents, integrator, duration);
+            dt = duration / microsteps;
+        }
+
+        state.load();
+        for (int i=0; i<microsteps; ++i)
+        {
+            if (!microstep(state, integrator, dt, walls, grid, model)) break;
+        }
+        state.store();
+    }
+
+    //  fewest microsteps that keep the integrator stable and in which no
+    //  agent moves farther than its radius, so that every agent is caught by
+    //  the wall stop force before it reaches a wall
+    private static int computeMicrosteps(
+        List<Agent> agents,
+        Integrator integrator,
+        double duration)
     {
-        Map<EntityID, List<Wall>> walls = new HashMap<>();
+        double maxLimit = 0.0;
         for (Agent agent : agents)
+            maxLimit = Math.max(maxLimit, agent.getVelocityLimit());
+
+        double maxTime = integrator.getMaxStableTime();
+        if (maxLimit > 0.0)
+            maxTime = Math.min(maxTime, Environment.AGENT_RADIUS / maxLimit);
+
+        return Math.max(1, (int)Math.ceil(duration / maxTime));
+    }
+
+    //  absorbs the rounding of the velocity clamp
+    private static final double ISLAND_MARGIN = 1.0;
+
+    //  no agent travels farther than its velocity limit allows in duration, so
+    //  agents of different islands stay outside the cutoff box of each other
+    //  for the whole timestep and the islands can be simulated independently
+    //  walls are per agent and do not couple agents
+    //  agents keep their relative order, so every island sums its forces in
+    //  the same order as a single simulation of all agents would
+    private static List<List<Agent>> partition(List<Agent> agents, double duration)
+    {
+        int n = agents.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double[] reaches = new double[n];
+
+        double maxReach = 0.0;
+        for (int i=0; i<n; ++i)
         {
-            EntityID id = agent.unwrap().getID();
-            walls.put(id, extractWalls(agent, model));
+            Agent agent = agents.get(i);
+            xs[i] = agent.getXY().getX();
+            ys[i] = agent.getXY().getY();
+            reaches[i] = duration*agent.getVelocityLimit() + ISLAND_MARGIN;
+            maxReach = Math.max(maxReach, reaches[i]);
+        }
+
+        double cutoff = Environment.AGENT_DISTANCE_CUTOFF;
+        AgentGrid grid = new AgentGrid(cutoff + 2.0*maxReach, n);
+        grid.rebuild(xs, ys, n);
+
+        Islands islands = new Islands(n);
+        for (int i=0; i<n; ++i)
+        {
+            int cx = grid.getCellX(i);
+            int cy = grid.getCellY(i);
+
+            for (int ox=-1; ox<=1; ++ox) for (int oy=-1; oy<=1; ++oy)
+            {
+                int head = grid.getHead(cx+ox, cy+oy);
+                for (int j=head; j>=0; j=grid.getNext(j))
+                {
+                    if (j <= i) continue;
+
+                    double limit = cutoff + reaches[i] + reaches[j];
+                    if (Math.abs(xs[j]-xs[i]) > limit) continue;
+                    if (Math.abs(ys[j]-ys[i]) > limit) continue;
+                    islands.union(i, j);
+                }
+            }
         }
 
-        for (int i=0; i<MICROSTEPS; ++i)
+        List<List<Agent>> retval = new ArrayList<>();
+        for (int[] group : islands.getGroups())
         {
-            microstep(agents, MICROSTEP_TIME_MS, walls, model);
+            List<Agent> island = new ArrayList<>(group.length);
+            for (int i : group) island.add(agents.get(i));
+            retval.add(island);
         }
+
+        return retval;
     }
 
-    public static void microstep(
-        Collection<Agent> agents,
+    //  returns false without changing anything if no agent is active, so
+    //  that all the following microsteps would do nothing as well
+    public static boolean microstep(
+        AgentState state,
+        Integrator integrator,
         double dt,
-        Map<EntityID, List<Wall>> walls,
+        WallSet[] walls,
+        AgentGrid grid,
         StandardWorldModel model)
     {
-        for (Agent agent : agents)
+        grid.rebuild(state.getXs(), state.getYs(), state.size());
+        updateActive(state, grid);
+        if (state.getActiveCount() == 0) return false;
+
+        integrator.step(state, dt, walls, grid);
+        return true;
+    }
+
+    public static void forEachActive(AgentState state, IntConsumer body)
+    {
+        if (Environment.PARALLEL_MICROSTEP)
+        {
+            WorkerPool.forEach(
+                state.getActiveCount(),
+                k -> body.accept(state.getActive(k)));
+            return;
+        }
+
+        for (int k=0; k<state.getActiveCount(); ++k)
+            body.accept(state.getActive(k));
+    }
+
+    //  total force on every active agent at the current positions and
+    //  velocities, with the wall stop force cancelling the velocity toward
+    //  walls within dt
+    //  the grid has to be built over the current positions
+    //  the kernel is resolved once here and passed to the agents
+    public static void evaluate(
+        AgentState state,
+        double dt,
+        WallSet[] walls,
+        AgentGrid grid)
+    {
+        ForceKernel kernel = ForceKernels.get();
+
+        computeAgentsForces(state, grid, kernel);
+        forEachActive(state, i -> evaluateAgent(state, i, dt, walls[i], kernel));
+    }
+
+    private static final double SETTLE_DISTANCE = 1.0;
+    private static final double SETTLE_VELOCITY = 0.001;
+
+    //  an agent is active if it can change its position or velocity in this
+    //  microstep: it can be pushed by another agent within the cutoff box,
+    //  it follows a path, or it is still moving
+    //  an agent within SETTLE_DISTANCE of its final destination and slower
+    //  than SETTLE_VELOCITY is stopped there instead of creeping closer
+    //  inactive agents are held in place with zero velocity
+    private static void updateActive(AgentState state, AgentGrid grid)
+    {
+        state.clearActive();
+
+        for (int i=0; i<state.size(); ++i)
         {
-            updateWalls(agent, walls.get(agent.unwrap().getID()), dt);
-            agent.updateNextPathElement();
-            Vector2D force = computeForces(agent, agents, walls.get(agent.unwrap().getID()), dt);
-            updatePosition(agent, dt, force, walls.get(agent.unwrap().getID()));
+            boolean active;
+            if (state.isMovable(i) && hasNeighbour(state, grid, i))
+                active = true;
+            else if (state.getAgent(i).hasNextPathElement())
+                active = !isSettled(state, i);
+            else
+                active = state.getVX(i) != 0.0 || state.getVY(i) != 0.0;
+
+            if (active) state.addActive(i);
+            else state.hold(i);
         }
     }
 
-    private static void updateWalls(Agent agent, List<Wall> walls, double dt)
+    private static boolean hasNeighbour(AgentState state, AgentGrid grid, int i)
     {
-        Point2D xy = agent.getXY();
-        //double cutoff =
-        //    Math.max(dt*agent.getVelocityLimit(), Environment.WALL_DISTANCE_CUTOFF);
+        double cutoff = Environment.AGENT_DISTANCE_CUTOFF;
+        int cx = grid.getCellX(i);
+        int cy = grid.getCellY(i);
 
-        for (Wall wall : walls)
+        for (int ox=-1; ox<=1; ++ox) for (int oy=-1; oy<=1; ++oy)
         {
-            wall.updateClosest(xy);
+            int head = grid.getHead(cx+ox, cy+oy);
+            for (int j=head; j>=0; j=grid.getNext(j))
+            {
+                if (j == i) continue;
+                if (Math.abs(state.getX(j)-state.getX(i)) > cutoff) continue;
+                if (Math.abs(state.getY(j)-state.getY(i)) > cutoff) continue;
+                return true;
+            }
         }
 
-        walls.sort((w1, w2) -> Double.compare(w1.getDistance(), w2.getDistance()));
+        return false;
     }
 
-    private static Vector2D computeForces(Agent agent, Collection<Agent> agents, List<Wall> walls, double dt)
+    private static boolean isSettled(AgentState state, int i)
     {
-        agent.setColocated(false);
-        Vector2D agentsForce = computeAgentsForce(agent, agents);
-        Vector2D force = new Vector2D(0.0, 0.0);
-        force = force.add(agentsForce);
+        Agent agent = state.getAgent(i);
+        if (!agent.isLastPathElement()) return false;
+
+        double dist = Math.hypot(
+            agent.getFinalDestinationX()-state.getX(i),
+            agent.getFinalDestinationY()-state.getY(i));
+        double v = Math.hypot(state.getVX(i), state.getVY(i));
+
+        return dist < SETTLE_DISTANCE && v < SETTLE_VELOCITY;
+    }
 
-        if (!agent.isColocated())
+    private static void evaluateAgent(
+        AgentState state,
+        int i,
+        double dt,
+        WallSet walls,
+        ForceKernel kernel)
+    {
+        Agent agent = state.getAgent(i);
+
+        updateWalls(state, i, state.getX(i), state.getY(i), walls, dt);
+        agent.updateNextPathElement(state.getX(i), state.getY(i));
+
+        double fx = state.getAgentsForceX(i);
+        double fy = state.getAgentsForceY(i);
+
+        if (!state.isColocated(i))
         {
-            Vector2D destinationForce = computeDestinationForce(agent);
-            force = force.add(destinationForce);
-            Vector2D wallsForce = computeWallsForce(agent, dt, walls, destinationForce, agentsForce);
-            force = force.add(wallsForce);
+            computeDestinationForce(state, i);
+            fx += state.getDestinationForceX(i);
+            fy += state.getDestinationForceY(i);
+
+            computeWallsForce(state, i, dt, walls, kernel);
+            fx += state.getWallsForceX(i);
+            fy += state.getWallsForceY(i);
         }
 
-        return force;
+        state.setForce(i, fx, fy);
     }
 
-    private static Vector2D computeAgentsForce(Agent agent, Collection<Agent> agents)
+    private static void updateWalls(
+        AgentState state,
+        int i,
+        double x,
+        double y,
+        WallSet walls,
+        double dt)
     {
-        double cutoff = Environment.AGENT_DISTANCE_CUTOFF;
-        double a = Environment.AGENT_FORCE_COEF_A;
-        double b = Environment.AGENT_FORCE_COEF_B;
-        double k = Environment.AGENT_FORCE_COEF_K;
-        double limit = Environment.AGENT_FORCE_LIMIT;
+        double reach = dt*state.getVelocityLimit(i) + Environment.AGENT_RADIUS;
+        double cutoff = Math.max(reach, Environment.WALL_DISTANCE_CUTOFF);
 
-        double xsum = 0.0;
-        double ysum = 0.0;
+        walls.update(x, y, cutoff);
+    }
 
-        for (Agent other : agents)
+    //  agent-agent forces for the active agents at the positions of the
+    //  microstep start; inactive agents only act as sources
+    //  the scalar kernel evaluates each pair within the cutoff box once and
+    //  applies it to both agents with opposite signs in a sequential
+    //  microstep; otherwise every agent gathers its neighbour candidates and
+    //  the kernel sums them, writing only the entry of that agent
+    //  with the scalar kernel, both only differ from the brute-force loop over
+    //  all agents by summation order
+    //  in deterministic mode, every agent gathers and sums its candidates in
+    //  ascending agent index order with the scalar kernel, so the sums do not
+    //  depend on the grid layout, the thread count or the parallel mode
+    private static void computeAgentsForces(
+        AgentState state,
+        AgentGrid grid,
+        ForceKernel kernel)
+    {
+        int n = state.size();
+        int count = state.getActiveCount();
+
+        boolean deterministic = Environment.DETERMINISTIC_MICROSTEP;
+        if (Environment.PARALLEL_MICROSTEP
+            || deterministic
+            || !(kernel instanceof ScalarForceKernel))
         {
-            if (agent.unwrap().getID().equals(other.unwrap().getID())) continue;
-            if (!agent.canMove()) continue;
+            forEachActive(
+                state,
+                i -> gatherAgentsForce(state, grid, kernel, i, deterministic));
+            return;
+        }
 
-            double dx = other.getXY().getX() - agent.getXY().getX();
-            if (Math.abs(dx) > cutoff) continue;
-            double dy = other.getXY().getY() - agent.getXY().getY();
-            if (Math.abs(dy) > cutoff) continue;
+        for (int i=0; i<n; ++i)
+        {
+            state.setAgentsForce(i, 0.0, 0.0);
+            state.setColocated(i, false);
+        }
 
-            double totalr = Environment.AGENT_RADIUS*2.0;
-            double dist = Math.hypot(dx, dy);
+        //  a pair of inactive agents never exerts a force, as an inactive
+        //  agent within the cutoff box of another agent cannot move
+        for (int i=0; i<n; ++i)
+        {
+            int cx = grid.getCellX(i);
+            int cy = grid.getCellY(i);
+            boolean active = state.isActive(i);
 
-            if (dist == 0.0)
+            for (int j=grid.getNext(i); j>=0; j=grid.getNext(j))
             {
-                xsum = Environment.getColocatedAgentNudge();
-                ysum = Environment.getColocatedAgentNudge();
-                agent.setColocated(true);
-                break;
+                if (active || state.isActive(j))
+                    ScalarForceKernel.accumulate(state, i, j, true);
             }
 
-            double dxn = dx / dist;
-            double dyn = dy / dist;
+            for (int[] offset : HALF_NEIGHBOURS)
+            {
+                int head = grid.getHead(cx+offset[0], cy+offset[1]);
+                for (int j=head; j>=0; j=grid.getNext(j))
+                {
+                    if (active || state.isActive(j))
+                        ScalarForceKernel.accumulate(state, i, j, true);
+                }
+            }
+        }
+
+        for (int k=0; k<count; ++k) limitAgentsForce(state, state.getActive(k));
+    }
+
+    //  neighbour buckets visited from each bucket so that every pair of
+    //  adjacent buckets is visited exactly once
+    private static final int[][] HALF_NEIGHBOURS =
+        {{1, 0}, {1, 1}, {0, 1}, {-1, 1}};
+
+    private static final ThreadLocal<int[]> CANDIDATES =
+        ThreadLocal.withInitial(() -> new int[64]);
+
+    private static void gatherAgentsForce(
+        AgentState state,
+        AgentGrid grid,
+        ForceKernel kernel,
+        int i,
+        boolean sorted)
+    {
+        state.setAgentsForce(i, 0.0, 0.0);
+        state.setColocated(i, false);
 
-            double negativeSeparation = totalr - dist;
-            double tmp = -a * Math.exp(negativeSeparation * b);
+        if (state.isMovable(i))
+        {
+            int[] candidates = CANDIDATES.get();
+            int count = 0;
 
-            xsum += tmp * dxn;
-            ysum += tmp * dyn;
+            int cx = grid.getCellX(i);
+            int cy = grid.getCellY(i);
 
-            if (negativeSeparation > 0.0)
+            for (int ox=-1; ox<=1; ++ox) for (int oy=-1; oy<=1; ++oy)
             {
-                xsum += -k * negativeSeparation * dxn;
-                ysum += -k * negativeSeparation * dyn;
+                int head = grid.getHead(cx+ox, cy+oy);
+                for (int j=head; j>=0; j=grid.getNext(j))
+                {
+                    if (j == i) continue;
+                    if (count == candidates.length)
+                    {
+                        candidates = Arrays.copyOf(candidates, count*2);
+                        CANDIDATES.set(candidates);
+                    }
+                    candidates[count++] = j;
+                }
             }
+
+            if (sorted) Arrays.sort(candidates, 0, count);
+            kernel.accumulateAgentsForce(state, i, candidates, count);
+        }
+
+        limitAgentsForce(state, i);
+    }
+
+    private static void limitAgentsForce(AgentState state, int i)
+    {
+        double limit = Environment.AGENT_FORCE_LIMIT;
+
+        double xsum = state.getAgentsForceX(i);
+        double ysum = state.getAgentsForceY(i);
+
+        if (state.isColocated(i))
+        {
+            xsum = Environment.getColocatedAgentNudge();
+            ysum = Environment.getColocatedAgentNudge();
         }
 
         double forcesum = Math.hypot(xsum, ysum);
         if (forcesum > limit)
         {
-            //double rate = limit / forcesum;
-            //forcesum = limit;
-            //xsum *= rate;
-            //ysum *= rate;
             forcesum /= limit;
             xsum /= forcesum;
             ysum /= forcesum;
         }
 
-        return new Vector2D(xsum, ysum);
+        state.setAgentsForce(i, xsum, ysum);
     }
 
-    private static final double DDD = 0.001;
-    private static final double SSS_1 = 0.0001;
-    private static final double SSS_2 = 0.0002;
+    private static final double DDD = Environment.DESTINATION_SLOWDOWN_COEF;
+    private static final double SSS_1 = Environment.STOP_FORCE_COEF;
+    private static final double SSS_2 = Environment.DESTINATION_FORCE_COEF;
 
-    private static Vector2D computeDestinationForce(Agent agent)
+    private static void computeDestinationForce(AgentState state, int i)
     {
-        Vector2D velocity = agent.getVelocity();
-        PathElement nextelem = agent.getNextPathElement();
-        if (nextelem == null)
+        Agent agent = state.getAgent(i);
+        double vx = state.getVX(i);
+        double vy = state.getVY(i);
+
+        if (!agent.hasNextPathElement())
         {
-            return new Vector2D(SSS_1*-velocity.getX(), SSS_1*-velocity.getY());
+            state.setDestinationForce(i, SSS_1*-vx, SSS_1*-vy);
+            return;
         }
 
-        Point2D dest = nextelem.getLine().getEndPoint();
-        double dx = dest.getX() - agent.getXY().getX();
-        double dy = dest.getY() - agent.getXY().getY();
+        double destX = agent.getNextPathEndX();
+        double destY = agent.getNextPathEndY();
+        double dx = destX - state.getX(i);
+        double dy = destY - state.getY(i);
 
         double dist = Math.hypot(dx, dy);
         if (dist != 0.0)
@@ -164,181 +468,164 @@ public class Time
             dy /= dist;
         }
 
-        if (dest.equals(agent.getFinalDestination()))
+        double limit = state.getVelocityLimit(i);
+        if (destX == agent.getFinalDestinationX() &&
+            destY == agent.getFinalDestinationY())
         {
-            dx = Math.min(agent.getVelocityLimit(), DDD*dist) * dx;
-            dy = Math.min(agent.getVelocityLimit(), DDD*dist) * dy;
+            dx = Math.min(limit, DDD*dist) * dx;
+            dy = Math.min(limit, DDD*dist) * dy;
         }
         else
         {
-            dx = agent.getVelocityLimit() * dx;
-            dy = agent.getVelocityLimit() * dy;
+            dx = limit * dx;
+            dy = limit * dy;
         }
 
-        return new Vector2D(
-            SSS_2*(dx-velocity.getX()),
-            SSS_2*(dy-velocity.getY()));
+        state.setDestinationForce(i, SSS_2*(dx-vx), SSS_2*(dy-vy));
     }
 
-    private static Vector2D computeWallsForce(
-        Agent agent,
+    private static void computeWallsForce(
+        AgentState state,
+        int i,
         double dt,
-        List<Wall> walls,
-        Vector2D destinationForce,
-        Vector2D agentsForce)
+        WallSet walls,
+        ForceKernel kernel)
     {
         double xsum = 0.0;
         double ysum = 0.0;
 
-        Point2D xy = agent.getXY();
-
         double r = Environment.AGENT_RADIUS;
         double cutoff = Environment.WALL_DISTANCE_CUTOFF;
         double b = Environment.WALL_FORCE_COEF_B;
 
-        for (Wall wall : walls)
+        double currentFX = state.getDestinationForceX(i) + state.getAgentsForceX(i);
+        double currentFY = state.getDestinationForceY(i) + state.getAgentsForceY(i);
+        double expectedVX = state.getVX(i) + dt * currentFX;
+        double expectedVY = state.getVY(i) + dt * currentFY;
+
+        //  walls are ordered by distance and only walls closer than the agent
+        //  radius get a non-zero stop force, so the line of sight is only
+        //  checked for those
+        for (int k=0; k<walls.size(); ++k)
         {
+            Wall wall = walls.get(k);
             if (wall.getDistance() > cutoff) break;
-            if (!wall.hasLineOfSight(walls)) continue;
 
-            Vector2D velocity = agent.getVelocity();
-            double currentFX = destinationForce.getX() + agentsForce.getX();
-            double currentFY = destinationForce.getY() + agentsForce.getY();
-            double expectedVX = velocity.getX() + dt * currentFX;
-            double expectedVY = velocity.getY() + dt * currentFY;
-            Vector2D expectedVelocity = new Vector2D(expectedVX, expectedVY);
-            Vector2D wallForceVector = wall.getVector().scale(-1.0/wall.getDistance());
             double radii = wall.getDistance() / r;
+            if (radii >= 1.0) break;
 
-            double magnitude = -expectedVelocity.dot(wallForceVector);
-            if (magnitude < 0.0 || radii >= 1.0)
-            {
-                magnitude = 0.0;
-            }
-            else
-            if (radii < 1.0)
-            {
-                double d = Math.exp(-(radii-1.0)*b);
-                if (d < 1.0) d = 0.0;
-                magnitude *= d;
-                if (wall.isClosestPointEnd()) magnitude /= 2.0;
-            }
+            double wallForceX = wall.getVectorX() * (-1.0/wall.getDistance());
+            double wallForceY = wall.getVectorY() * (-1.0/wall.getDistance());
 
-            Vector2D stopForce = wallForceVector.scale(magnitude / dt);
-            xsum += stopForce.getX();
-            ysum += stopForce.getY();
-        }
+            double magnitude = -(expectedVX*wallForceX + expectedVY*wallForceY);
+            if (magnitude < 0.0) continue;
 
-        return new Vector2D(xsum, ysum);
-    }
+            double d = kernel.exp(-(radii-1.0)*b);
+            if (d < 1.0) continue;
+            magnitude *= d;
+            if (wall.isClosestPointEnd()) magnitude /= 2.0;
 
-    private static void updatePosition(Agent agent, double dt, Vector2D force, List<Wall> walls)
-    {
-        double newVX = agent.getVelocity().getX() + dt*force.getX();
-        double newVY = agent.getVelocity().getY() + dt*force.getY();
-        //test
-        //if (newVX != 0.0 || newVY != 0.0)
-        //    System.out.println("[" + agent.unwrap().getID() + "]" + newVY + ", " + newVY);
-        //
-        double v = Math.hypot(newVX, newVY);
-        if (v > agent.getVelocityLimit())
-        {
-            //double rate = agent.getVelocityLimit()/ v;
-            //v = agent.getVelocityLimit();
-            //newVX *= rate;
-            //newVY *= rate;
-            v /= agent.getVelocityLimit();
-            newVX /= v;
-            newVY /= v;
-        }
-
-        double x = agent.getXY().getX() + dt*newVX;
-        double y = agent.getXY().getY() + dt*newVY;
+            if (!wall.hasLineOfSight(walls)) continue;
 
-        Line2D moveline = new Line2D(agent.getXY(), new Point2D(x, y));
-        for (Wall wall : walls)
-        {
-            if (wall.getDistance() > moveline.getDirection().getLength()) break;
-            Point2D intersection =
-                GeometryTools2D.getSegmentIntersectionPoint(wall.unwrap(), moveline);
-            if (intersection != null)
-            {
-                agent.setVelocity(new Vector2D(0.0, 0.0));
-                return;
-            }
+            xsum += wallForceX * (magnitude / dt);
+            ysum += wallForceY * (magnitude / dt);
         }
- 
-        agent.setVelocity(new Vector2D(newVX, newVY));
-        agent.setXY(x, y);
+
+        state.setWallsForce(i, xsum, ysum);
     }
 
-    private static List<Wall> extractWalls(Agent agent, StandardWorldModel model)
+    //  moves agent i from (x, y) by dt*(moveVX, moveVY) into the next buffer
+    //  with the velocity (newVX, newVY), both limited to its velocity limit
+    //  with record, the new position is appended to the history of the agent
+    public static void advance(
+        AgentState state,
+        int i,
+        double x,
+        double y,
+        double dt,
+        double moveVX,
+        double moveVY,
+        double newVX,
+        double newVY,
+        WallSet walls,
+        boolean record)
     {
-        List<Wall> retval = new LinkedList<>();
-        List<PathElement> elems = agent.getPath();
-        if (elems == null) return retval;
+        double limit = state.getVelocityLimit(i);
+        double v = computeOverspeed(newVX, newVY, limit);
+        newVX /= v;
+        newVY /= v;
 
-        Set<EntityID> completed = new HashSet<>();
+        v = computeOverspeed(moveVX, moveVY, limit);
+        moveVX /= v;
+        moveVY /= v;
 
-        for (PathElement elem : elems)
+        //  move the agent as a circle and slide along the walls it hits
+        updateWalls(state, i, x, y, walls, dt);
+
+        double r = Environment.AGENT_RADIUS;
+        double startX = x;
+        double startY = y;
+        double moveX = dt*moveVX;
+        double moveY = dt*moveVY;
+
+        //  the wall slid along is skipped in the next sweep, and the agent
+        //  only stops if its remaining move still runs into a wall
+        Wall slid = null;
+        for (int k=0; k<COLLISION_ITERATIONS; ++k)
         {
-            Area area = (Area)model.getEntity(elem.getID());
+            if (moveX == 0.0 && moveY == 0.0) break;
 
-            if (!completed.contains(elem.getID()))
-            {
-                completed.add(elem.getID());
+            double toi = walls.sweep(x, y, moveX, moveY, r, slid);
+            x += toi*moveX;
+            y += toi*moveY;
+            if (toi >= 1.0) break;
 
-                List<Wall> walls = area.getEdges()
-                    .stream()
-                    .filter(e -> !e.isPassable())
-                    .map(Edge::getLine)
-                    .map(l -> new Wall(l))
-                    .collect(Collectors.toList());
-                retval.addAll(walls);
+            slid = walls.getImpactWall();
+            double nx = walls.getImpactNormalX();
+            double ny = walls.getImpactNormalY();
 
-                if (area.isBlockadesDefined())
-                {
-                    area.getBlockades()
-                        .stream()
-                        .map(i -> (Blockade)model.getEntity(i))
-                        .flatMap(b -> GeometryTools2D.pointsToLines(
-                            GeometryTools2D.vertexArrayToPoints(
-                                b.getApexes()), true).stream())
-                        .map(l -> new Wall(l))
-                        .forEach(l -> retval.add(l));
-                }
+            moveX *= 1.0-toi;
+            moveY *= 1.0-toi;
+            double mn = moveX*nx + moveY*ny;
+            if (mn < 0.0)
+            {
+                moveX -= mn*nx;
+                moveY -= mn*ny;
             }
 
-            for (EntityID neighbourID : area.getNeighbours())
+            double vn = newVX*nx + newVY*ny;
+            if (vn < 0.0)
             {
-                Area neighbour = (Area)model.getEntity(neighbourID);
-                if (!completed.contains(neighbourID))
-                {
-                    completed.add(neighbourID);
-
-                    List<Wall> walls = neighbour.getEdges()
-                        .stream()
-                        .filter(e -> !e.isPassable())
-                        .map(Edge::getLine)
-                        .map(l -> new Wall(l))
-                        .collect(Collectors.toList());
-                    retval.addAll(walls);
+                newVX -= vn*nx;
+                newVY -= vn*ny;
+            }
 
-                    if (neighbour.isBlockadesDefined())
-                    {
-                        neighbour.getBlockades()
-                            .stream()
-                            .map(i -> (Blockade)model.getEntity(i))
-                            .flatMap(b -> GeometryTools2D.pointsToLines(
-                                GeometryTools2D.vertexArrayToPoints(
-                                    b.getApexes()), true).stream())
-                            .map(l -> new Wall(l))
-                            .forEach(l -> retval.add(l));
-                    }
-                }
+            if (k == COLLISION_ITERATIONS-1 &&
+                walls.sweep(x, y, moveX, moveY, r, slid) < 1.0)
+            {
+                newVX = 0.0;
+                newVY = 0.0;
             }
         }
 
-        return retval;
+        boolean moved = x != startX || y != startY;
+        state.setNext(i, x, y, newVX, newVY);
+        if (record && moved) state.getAgent(i).record(x, y);
+    }
+
+    //  keeps agent i where it is and sets its velocity in the next buffer
+    public static void updateVelocity(AgentState state, int i, double vx, double vy)
+    {
+        double v = computeOverspeed(vx, vy, state.getVelocityLimit(i));
+        state.setNext(i, state.getX(i), state.getY(i), vx/v, vy/v);
+    }
+
+    //  ratio of the speed to the limit if it exceeds the limit, 1.0 otherwise
+    private static double computeOverspeed(double vx, double vy, double limit)
+    {
+        double v = Math.hypot(vx, vy);
+        if (v > limit) return v / limit;
+
+        return 1.0;
     }
 }
@@ -0,0 +1,140 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+import jdk.incubator.vector.*;
+
+//  agent-agent repulsion over lanes of neighbour candidates
+//  only loaded through ForceKernels, so that this is the only class that
+//  needs jdk.incubator.vector
+//  exp(x) is approximated as 2^k * p(r) with x = k*ln2 + r, |r| <= ln2/2 and
+//  p the Taylor polynomial of degree 7, so the relative error stays below
+//  1.0E-8 on the clamped range [-700, 700]
+public class VectorForceKernel implements ForceKernel
+{
+    private static final VectorSpecies<Double> SPECIES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    private static final double LOG2E = 1.4426950408889634;
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double EXP_LIMIT = 700.0;
+    //  keeps x*log2(e) + 0.5 positive so that truncation is floor
+    private static final long EXP_SHIFT = 2048;
+
+    private static final double C2 = 1.0/2.0;
+    private static final double C3 = 1.0/6.0;
+    private static final double C4 = 1.0/24.0;
+    private static final double C5 = 1.0/120.0;
+    private static final double C6 = 1.0/720.0;
+    private static final double C7 = 1.0/5040.0;
+
+    @Override
+    public void accumulateAgentsForce(AgentState state, int i, int[] js, int n)
+    {
+        double cutoff = Environment.AGENT_DISTANCE_CUTOFF;
+        double a = Environment.AGENT_FORCE_COEF_A;
+        double b = Environment.AGENT_FORCE_COEF_B;
+        double k = Environment.AGENT_FORCE_COEF_K;
+        double totalr = Environment.AGENT_RADIUS*2.0;
+
+        double[] xs = state.getXs();
+        double[] ys = state.getYs();
+        double x = xs[i];
+        double y = ys[i];
+
+        DoubleVector xsum = DoubleVector.zero(SPECIES);
+        DoubleVector ysum = DoubleVector.zero(SPECIES);
+        boolean colocated = false;
+
+        int bound = SPECIES.loopBound(n);
+        int o = 0;
+        for (; o<bound; o+=SPECIES.length())
+        {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, 0, js, o).sub(x);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, 0, js, o).sub(y);
+
+            VectorMask<Double> mask = dx.abs().compare(VectorOperators.LE, cutoff)
+                .and(dy.abs().compare(VectorOperators.LE, cutoff));
+            if (!mask.anyTrue()) continue;
+
+            DoubleVector dist = dx.mul(dx).add(dy.mul(dy)).sqrt();
+            VectorMask<Double> zero = dist.compare(VectorOperators.EQ, 0.0).and(mask);
+            if (zero.anyTrue())
+            {
+                colocated = true;
+                mask = mask.andNot(zero);
+            }
+
+            DoubleVector negativeSeparation = dist.neg().add(totalr);
+            DoubleVector scale = exp(negativeSeparation.mul(b)).mul(-a)
+                .add(negativeSeparation.max(0.0).mul(-k))
+                .div(dist);
+
+            xsum = xsum.add(scale.mul(dx), mask);
+            ysum = ysum.add(scale.mul(dy), mask);
+        }
+
+        double fx = xsum.reduceLanes(VectorOperators.ADD);
+        double fy = ysum.reduceLanes(VectorOperators.ADD);
+
+        for (; o<n; ++o)
+        {
+            double dx = xs[js[o]] - x;
+            if (Math.abs(dx) > cutoff) continue;
+            double dy = ys[js[o]] - y;
+            if (Math.abs(dy) > cutoff) continue;
+
+            double dist = Math.sqrt(dx*dx + dy*dy);
+            if (dist == 0.0)
+            {
+                colocated = true;
+                continue;
+            }
+
+            double negativeSeparation = totalr - dist;
+            double scale = (-a*this.exp(negativeSeparation*b)
+                - k*Math.max(negativeSeparation, 0.0)) / dist;
+
+            fx += scale * dx;
+            fy += scale * dy;
+        }
+
+        if (colocated) state.setColocated(i, true);
+        state.addAgentsForce(i, fx, fy);
+    }
+
+    @Override
+    public double exp(double x)
+    {
+        x = Math.max(-EXP_LIMIT, Math.min(EXP_LIMIT, x));
+
+        long k = (long)(x*LOG2E + (0.5+EXP_SHIFT)) - EXP_SHIFT;
+        double r = x - k*LN2_HI - k*LN2_LO;
+        double p = 1.0 + r*(1.0 + r*(C2 + r*(C3 + r*(C4 + r*(C5 + r*(C6 + r*C7))))));
+
+        return p * Double.longBitsToDouble((k+1023) << 52);
+    }
+
+    private static DoubleVector exp(DoubleVector x)
+    {
+        x = x.max(-EXP_LIMIT).min(EXP_LIMIT);
+
+        LongVector k = ((LongVector)x.mul(LOG2E).add(0.5+EXP_SHIFT)
+            .convert(VectorOperators.D2L, 0))
+            .sub(EXP_SHIFT);
+        DoubleVector kd = (DoubleVector)k.convert(VectorOperators.L2D, 0);
+        DoubleVector r = x.sub(kd.mul(LN2_HI)).sub(kd.mul(LN2_LO));
+
+        DoubleVector p = r.mul(C7).add(C6)
+            .mul(r).add(C5)
+            .mul(r).add(C4)
+            .mul(r).add(C3)
+            .mul(r).add(C2)
+            .mul(r).add(1.0)
+            .mul(r).add(1.0);
+
+        return p.mul(k.add(1023).lanewise(VectorOperators.LSHL, 52)
+            .reinterpretAsDoubles());
+    }
+}
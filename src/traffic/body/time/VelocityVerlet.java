@@ -0,0 +1,52 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+//  moves the agent by dt*v + dt^2/2*a, evaluates the forces again at the
+//  new position with the predicted velocity v + dt*a and updates the
+//  velocity with the mean of both
+//  as stable as semi-implicit Euler, with two force evaluations per
+//  microstep for second order accuracy
+public class VelocityVerlet implements Integrator
+{
+    @Override
+    public double getMaxStableTime()
+    {
+        double w = Integrators.getContactFrequency();
+        double c = Environment.DESTINATION_FORCE_COEF;
+
+        return Integrators.SAFETY * Math.min(2.0/w, 2.0/c);
+    }
+
+    @Override
+    public void step(AgentState state, double dt, WallSet[] walls, AgentGrid grid)
+    {
+        Time.evaluate(state, dt, walls, grid);
+        Time.forEachActive(state, i -> {
+            state.save(i);
+
+            double ax = state.getForceX(i);
+            double ay = state.getForceY(i);
+            double vx = state.getVX(i);
+            double vy = state.getVY(i);
+
+            Time.advance(
+                state, i, state.getX(i), state.getY(i), dt,
+                vx + 0.5*dt*ax, vy + 0.5*dt*ay, vx + dt*ax, vy + dt*ay,
+                walls[i], true);
+        });
+        state.swap();
+
+        grid.rebuild(state.getXs(), state.getYs(), state.size());
+        Time.evaluate(state, dt, walls, grid);
+        Time.forEachActive(state, i -> {
+            double vx = state.getSavedVX(i)
+                + 0.5*dt*(state.getSavedForceX(i) + state.getForceX(i));
+            double vy = state.getSavedVY(i)
+                + 0.5*dt*(state.getSavedForceY(i) + state.getForceY(i));
+
+            Time.updateVelocity(state, i, vx, vy);
+        });
+        state.swap();
+    }
+}
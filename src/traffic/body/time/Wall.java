@@ -8,13 +8,48 @@ import java.util.stream.*;
 
 public class Wall
 {
+    private static final double APPROACH_EPSILON = 1.0e-9;
+
     private Line2D wrapped;
-    private Point2D closest;
-    private Line2D line;
+
+    //  segment geometry, fixed at construction
+    private double ox;
+    private double oy;
+    private double ex;
+    private double ey;
+    private double dx;
+    private double dy;
+    private double inverseLength2;
+    private double normalX;
+    private double normalY;
+
+    //  relation to the agent, updated in place
+    private double fromX;
+    private double fromY;
+    private double closestX;
+    private double closestY;
+    private double vectorX;
+    private double vectorY;
+    private double distance;
+
+    private double impactNormalX;
+    private double impactNormalY;
 
     public Wall(Line2D wrapped)
     {
         this.wrapped = wrapped;
+
+        this.ox = wrapped.getOrigin().getX();
+        this.oy = wrapped.getOrigin().getY();
+        this.ex = wrapped.getEndPoint().getX();
+        this.ey = wrapped.getEndPoint().getY();
+        this.dx = wrapped.getDirection().getX();
+        this.dy = wrapped.getDirection().getY();
+
+        double length = wrapped.getDirection().getLength();
+        this.inverseLength2 = length == 0.0 ? 0.0 : 1.0 / (length*length);
+        this.normalX = length == 0.0 ? 0.0 : -this.dy / length;
+        this.normalY = length == 0.0 ? 0.0 : +this.dx / length;
     }
 
     public Line2D unwrap()
@@ -22,56 +57,221 @@ public class Wall
         return this.wrapped;
     }
 
-    public Point2D getClosest()
+    public double getOriginX()
+    {
+        return this.ox;
+    }
+
+    public double getOriginY()
     {
-        return this.closest;
+        return this.oy;
+    }
+
+    public double getDirectionX()
+    {
+        return this.dx;
+    }
+
+    public double getDirectionY()
+    {
+        return this.dy;
+    }
+
+    //  unit normal to the left of the direction
+    public double getNormalX()
+    {
+        return this.normalX;
+    }
+
+    public double getNormalY()
+    {
+        return this.normalY;
+    }
+
+    public double getClosestX()
+    {
+        return this.closestX;
+    }
+
+    public double getClosestY()
+    {
+        return this.closestY;
     }
 
     public double getDistance()
     {
-        return this.line.getDirection().getLength();
+        return this.distance;
     }
 
-    public Line2D getLine()
+    //  from the agent to the closest point
+    public double getVectorX()
     {
-        return this.line;
+        return this.vectorX;
     }
 
-    public void updateClosest(Point2D from)
+    public double getVectorY()
     {
-        this.closest =
-            GeometryTools2D.getClosestPointOnSegment(this.unwrap(), from);
-        this.line = new Line2D(from, this.closest);
+        return this.vectorY;
     }
 
-    public Vector2D getVector()
+    public void updateClosest(double x, double y)
     {
-        return this.line.getDirection();
+        double u = ((x-this.ox)*this.dx + (y-this.oy)*this.dy) * this.inverseLength2;
+
+        if (u <= 0.0)
+        {
+            this.closestX = this.ox;
+            this.closestY = this.oy;
+        }
+        else
+        if (u >= 1.0)
+        {
+            this.closestX = this.ex;
+            this.closestY = this.ey;
+        }
+        else
+        {
+            this.closestX = this.ox + this.dx*u;
+            this.closestY = this.oy + this.dy*u;
+        }
+
+        this.fromX = x;
+        this.fromY = y;
+        this.vectorX = this.closestX - x;
+        this.vectorY = this.closestY - y;
+        this.distance = Math.hypot(this.vectorX, this.vectorY);
     }
 
     public boolean isClosestPointEnd()
     {
-        if (this.unwrap().getOrigin().equals(this.closest)) return true;
-        if (this.unwrap().getEndPoint().equals(this.closest)) return true;
+        if (this.closestX == this.ox && this.closestY == this.oy) return true;
+        if (this.closestX == this.ex && this.closestY == this.ey) return true;
         return false;
     }
 
-    public boolean hasLineOfSight(List<Wall> walls)
+    //  time of impact in [0, 1) of a circle of radius r moving from (x, y)
+    //  by (mx, my), or 1.0 if it does not hit this wall; only motion into the
+    //  wall counts, so a circle already overlapping it can still leave
+    //  motion into the wall below APPROACH_EPSILON of the move is rounding
+    //  left over from sliding along it, and does not count either
+    public double computeImpact(double x, double y, double mx, double my, double r)
+    {
+        double t = 1.0;
+
+        if (this.inverseLength2 != 0.0)
+        {
+            double nx = this.normalX;
+            double ny = this.normalY;
+            double s = (x-this.ox)*nx + (y-this.oy)*ny;
+            if (s < 0.0)
+            {
+                s = -s;
+                nx = -nx;
+                ny = -ny;
+            }
+
+            double approach = mx*nx + my*ny;
+            if (approach < -APPROACH_EPSILON*Math.hypot(mx, my))
+            {
+                double tf = s <= r ? 0.0 : (s-r) / -approach;
+                double cx = x + mx*tf;
+                double cy = y + my*tf;
+                double u = ((cx-this.ox)*this.dx + (cy-this.oy)*this.dy) * this.inverseLength2;
+
+                if (tf < t && 0.0 <= u && u <= 1.0)
+                {
+                    t = tf;
+                    this.impactNormalX = nx;
+                    this.impactNormalY = ny;
+                }
+            }
+        }
+
+        t = this.computeEndImpact(this.ox, this.oy, x, y, mx, my, r, t);
+        t = this.computeEndImpact(this.ex, this.ey, x, y, mx, my, r, t);
+        return t;
+    }
+
+    //  unit normal of the last impact, pointing away from the wall
+    public double getImpactNormalX()
+    {
+        return this.impactNormalX;
+    }
+
+    public double getImpactNormalY()
+    {
+        return this.impactNormalY;
+    }
+
+    private double computeEndImpact(
+        double px, double py,
+        double x, double y,
+        double mx, double my,
+        double r,
+        double t)
+    {
+        double fx = x - px;
+        double fy = y - py;
+
+        double a = mx*mx + my*my;
+        double approach = mx*fx + my*fy;
+        if (approach >= -APPROACH_EPSILON*Math.sqrt(a)*Math.hypot(fx, fy)) return t;
+
+        double c = fx*fx + fy*fy - r*r;
+
+        double te = 0.0;
+        if (c > 0.0)
+        {
+            double disc = approach*approach - a*c;
+            if (disc < 0.0) return t;
+            te = (-approach - Math.sqrt(disc)) / a;
+        }
+        if (te >= t) return t;
+
+        double cx = fx + mx*te;
+        double cy = fy + my*te;
+        double length = Math.hypot(cx, cy);
+        if (length == 0.0)
+        {
+            cx = -mx;
+            cy = -my;
+            length = Math.sqrt(a);
+        }
+
+        this.impactNormalX = cx / length;
+        this.impactNormalY = cy / length;
+        return te;
+    }
+
+    //  a wall can only occlude this one if it is not farther from the agent
+    //  (the dot product below is at most the product of both distances),
+    //  so only the ordered prefix of the set up to this distance is scanned
+    public boolean hasLineOfSight(WallSet walls)
     {
-        for (Wall wall : walls)
+        for (int i=0; i<walls.size(); ++i)
         {
-            if (GeomUtil.isEqual(this.unwrap(), wall.getLine())) break;
+            Wall wall = walls.get(i);
+            if (wall.distance > this.distance) break;
+            if (this.isSegment(wall.fromX, wall.fromY, wall.closestX, wall.closestY)) break;
 
-            if (this.closest.equals(wall.unwrap().getOrigin()) ||
-                this.closest.equals(wall.unwrap().getEndPoint())) continue;
+            if (this.closestX == wall.ox && this.closestY == wall.oy) continue;
+            if (this.closestX == wall.ex && this.closestY == wall.ey) continue;
 
-            double dotp = this.getVector().dot(wall.getVector());
-            if (dotp < wall.getDistance()*wall.getDistance()) continue;
+            double dotp = this.vectorX*wall.vectorX + this.vectorY*wall.vectorY;
+            if (dotp < wall.distance*wall.distance) continue;
 
-            if (GeometryTools2D.getSegmentIntersectionPoint(this.line, wall.unwrap()) != null)
+            if (GeomUtil.touchSegments(
+                    this.fromX, this.fromY, this.vectorX, this.vectorY,
+                    wall.ox, wall.oy, wall.dx, wall.dy))
                 return false;
         }
 
         return true;
     }
+
+    private boolean isSegment(double x1, double y1, double x2, double y2)
+    {
+        return (this.ox == x1 && this.oy == y1 && this.ex == x2 && this.ey == y2) ||
+               (this.ox == x2 && this.oy == y2 && this.ex == x1 && this.ey == y1);
+    }
 }
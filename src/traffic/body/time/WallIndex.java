@@ -0,0 +1,179 @@
+package traffic.body.time;
+
+import rescuecore2.worldmodel.*;
+import rescuecore2.standard.entities.*;
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+import java.util.stream.*;
+
+//  map-wide uniform grid over impassable edges and blockade outlines
+//  walls are kept per area so that only areas with changed blockades
+//  have to be rebuilt
+public class WallIndex
+{
+    private double size;
+    private Map<EntityID, List<Line2D>> areaWalls;
+    private Map<Long, List<Line2D>> cells;
+
+    public WallIndex(double size, StandardWorldModel model)
+    {
+        this.size = size;
+        this.areaWalls = new HashMap<>();
+        this.cells = new HashMap<>();
+
+        for (StandardEntity entity : model)
+        {
+            if (entity instanceof Area) this.rebuild((Area)entity, model);
+        }
+    }
+
+    //  areas are rebuilt if their list of blockades or any of their
+    //  blockades changed, which covers removed blockades as well
+    public void update(ChangeSet changes, StandardWorldModel model)
+    {
+        String blockades = StandardPropertyURN.BLOCKADES.toString();
+
+        Set<EntityID> changed = new HashSet<>();
+        for (EntityID id : changes.getChangedEntities())
+        {
+            StandardEntity entity = model.getEntity(id);
+            if (entity instanceof Area &&
+                changes.getChangedProperty(id, blockades) != null) changed.add(id);
+            if (entity instanceof Blockade) changed.add(((Blockade)entity).getPosition());
+        }
+
+        for (EntityID id : changed)
+        {
+            StandardEntity entity = model.getEntity(id);
+            if (entity instanceof Area) this.rebuild((Area)entity, model);
+        }
+    }
+
+    public void rebuild(Area area, StandardWorldModel model)
+    {
+        List<Line2D> old = this.areaWalls.remove(area.getID());
+        if (old != null)
+        {
+            for (Line2D line : old) this.unregister(line);
+        }
+
+        List<Line2D> walls = extractWalls(area, model);
+        for (Line2D line : walls) this.register(line);
+        this.areaWalls.put(area.getID(), walls);
+    }
+
+    //  walls with any point within radius of (x, y)
+    public List<Line2D> query(double x, double y, double radius)
+    {
+        List<Line2D> retval = new ArrayList<>();
+        Set<Line2D> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        int cx1 = this.toCell(x-radius);
+        int cx2 = this.toCell(x+radius);
+        int cy1 = this.toCell(y-radius);
+        int cy2 = this.toCell(y+radius);
+
+        for (int cx=cx1; cx<=cx2; ++cx) for (int cy=cy1; cy<=cy2; ++cy)
+        {
+            List<Line2D> lines = this.cells.get(toKey(cx, cy));
+            if (lines == null) continue;
+
+            for (Line2D line : lines)
+            {
+                if (!visited.add(line)) continue;
+                if (computeDistance(line, x, y) <= radius) retval.add(line);
+            }
+        }
+
+        return retval;
+    }
+
+    private void register(Line2D line)
+    {
+        Point2D o = line.getOrigin();
+        Point2D e = line.getEndPoint();
+
+        int cx1 = this.toCell(Math.min(o.getX(), e.getX()));
+        int cx2 = this.toCell(Math.max(o.getX(), e.getX()));
+        int cy1 = this.toCell(Math.min(o.getY(), e.getY()));
+        int cy2 = this.toCell(Math.max(o.getY(), e.getY()));
+
+        for (int cx=cx1; cx<=cx2; ++cx) for (int cy=cy1; cy<=cy2; ++cy)
+        {
+            this.cells
+                .computeIfAbsent(toKey(cx, cy), k -> new ArrayList<>())
+                .add(line);
+        }
+    }
+
+    private void unregister(Line2D line)
+    {
+        Point2D o = line.getOrigin();
+        Point2D e = line.getEndPoint();
+
+        int cx1 = this.toCell(Math.min(o.getX(), e.getX()));
+        int cx2 = this.toCell(Math.max(o.getX(), e.getX()));
+        int cy1 = this.toCell(Math.min(o.getY(), e.getY()));
+        int cy2 = this.toCell(Math.max(o.getY(), e.getY()));
+
+        for (int cx=cx1; cx<=cx2; ++cx) for (int cy=cy1; cy<=cy2; ++cy)
+        {
+            long key = toKey(cx, cy);
+            List<Line2D> lines = this.cells.get(key);
+            if (lines == null) continue;
+
+            lines.removeIf(l -> l == line);
+            if (lines.isEmpty()) this.cells.remove(key);
+        }
+    }
+
+    private int toCell(double v)
+    {
+        return (int)Math.floor(v / this.size);
+    }
+
+    private static long toKey(int cx, int cy)
+    {
+        return ((long)cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static double computeDistance(Line2D line, double x, double y)
+    {
+        double ox = line.getOrigin().getX();
+        double oy = line.getOrigin().getY();
+        double dx = line.getEndPoint().getX() - ox;
+        double dy = line.getEndPoint().getY() - oy;
+
+        double length2 = dx*dx + dy*dy;
+        double t = length2 == 0.0 ? 0.0 : ((x-ox)*dx + (y-oy)*dy) / length2;
+        t = Math.max(0.0, Math.min(1.0, t));
+
+        return Math.hypot(ox + t*dx - x, oy + t*dy - y);
+    }
+
+    private static List<Line2D> extractWalls(Area area, StandardWorldModel model)
+    {
+        List<Line2D> retval = area.getEdges()
+            .stream()
+            .filter(e -> !e.isPassable())
+            .map(Edge::getLine)
+            .collect(Collectors.toList());
+
+        if (area.isBlockadesDefined())
+        {
+            area.getBlockades()
+                .stream()
+                .map(i -> model.getEntity(i))
+                .filter(e -> e instanceof Blockade)
+                .map(e -> (Blockade)e)
+                .filter(Blockade::isApexesDefined)
+                .flatMap(b -> GeometryTools2D.pointsToLines(
+                    GeometryTools2D.vertexArrayToPoints(
+                        b.getApexes()), true).stream())
+                .forEach(l -> retval.add(l));
+        }
+
+        return retval;
+    }
+}
@@ -0,0 +1,147 @@
+package traffic.body.time;
+
+import traffic.util.*;
+
+import rescuecore2.misc.geometry.*;
+
+import java.util.*;
+
+//  per-agent candidate walls around the position of the last refresh
+//  candidates cover the needed range plus a skin, so they stay valid until
+//  the agent has moved farther than the skin from that position
+//  only the walls within the needed range are ordered by distance
+public class WallSet
+{
+    private WallIndex index;
+
+    private Wall[] walls;
+    private int size;
+    private int nearCount;
+
+    private double impactNormalX;
+    private double impactNormalY;
+    private Wall impactWall;
+
+    private double updateX;
+    private double updateY;
+    private double updateRange;
+
+    private double anchorX;
+    private double anchorY;
+    private double radius;
+
+    public WallSet(WallIndex index)
+    {
+        this.index = index;
+        this.walls = new Wall[0];
+        this.size = 0;
+        this.nearCount = 0;
+        this.radius = -1.0;
+        this.updateRange = -1.0;
+    }
+
+    public int size()
+    {
+        return this.nearCount;
+    }
+
+    public Wall get(int i)
+    {
+        return this.walls[i];
+    }
+
+    public void update(double x, double y, double range)
+    {
+        if (this.index == null) return;
+        if (x == this.updateX && y == this.updateY && range == this.updateRange)
+            return;
+
+        double skin = Environment.WALL_SKIN_DISTANCE;
+        double moved = Math.hypot(x-this.anchorX, y-this.anchorY);
+        if (this.radius < range+skin || moved > this.radius-range)
+            this.refresh(x, y, range+skin);
+
+        this.updateX = x;
+        this.updateY = y;
+        this.updateRange = range;
+
+        int near = 0;
+        for (int i=0; i<this.size; ++i)
+        {
+            Wall wall = this.walls[i];
+            wall.updateClosest(x, y);
+            if (wall.getDistance() > range) continue;
+
+            this.walls[i] = this.walls[near];
+            this.walls[near] = wall;
+            near++;
+        }
+
+        for (int i=1; i<near; ++i)
+        {
+            Wall wall = this.walls[i];
+            int j = i-1;
+            for (; j>=0 && this.walls[j].getDistance() > wall.getDistance(); --j)
+                this.walls[j+1] = this.walls[j];
+            this.walls[j+1] = wall;
+        }
+
+        this.nearCount = near;
+    }
+
+    //  earliest time of impact in [0, 1) of a circle of radius r moving from
+    //  (x, y) by (mx, my) against the ordered walls except skip, or 1.0
+    //  without impact
+    //  the whole move has to stay within the range of the last update
+    public double sweep(double x, double y, double mx, double my, double r, Wall skip)
+    {
+        double offset = Math.hypot(x-this.updateX, y-this.updateY);
+        double reach = offset + Math.hypot(mx, my) + r;
+        double toi = 1.0;
+
+        for (int i=0; i<this.nearCount; ++i)
+        {
+            Wall wall = this.walls[i];
+            if (wall.getDistance() > reach) break;
+            if (wall == skip) continue;
+
+            double t = wall.computeImpact(x, y, mx, my, r);
+            if (t >= toi) continue;
+
+            toi = t;
+            this.impactNormalX = wall.getImpactNormalX();
+            this.impactNormalY = wall.getImpactNormalY();
+            this.impactWall = wall;
+        }
+
+        return toi;
+    }
+
+    public double getImpactNormalX()
+    {
+        return this.impactNormalX;
+    }
+
+    public double getImpactNormalY()
+    {
+        return this.impactNormalY;
+    }
+
+    public Wall getImpactWall()
+    {
+        return this.impactWall;
+    }
+
+    private void refresh(double x, double y, double radius)
+    {
+        List<Line2D> lines = this.index.query(x, y, radius);
+
+        this.walls = new Wall[lines.size()];
+        this.size = 0;
+        for (Line2D line : lines) this.walls[this.size++] = new Wall(line);
+
+        this.anchorX = x;
+        this.anchorY = y;
+        this.radius = radius;
+    }
+}
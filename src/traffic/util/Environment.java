@@ -13,6 +13,9 @@ public class Environment
     public static final double CIVILIAN_VELOCITY_SD = 0.002;
 
     public static final double WALL_DISTANCE_CUTOFF = 2000.0;
+    public static final double WALL_SKIN_DISTANCE = 1000.0;
+
+    public static final double AREA_INDEX_CELL_SIZE = 10000.0;
 
     public static final double AGENT_DISTANCE_CUTOFF = 10000.0;
     public static final double AGENT_FORCE_COEF_A = 0.0001;
@@ -22,10 +25,46 @@ public class Environment
 
     public static final double WALL_FORCE_COEF_B = 0.7;
 
+    public static final double DESTINATION_FORCE_COEF = 0.0002;
+    public static final double DESTINATION_SLOWDOWN_COEF = 0.001;
+    public static final double STOP_FORCE_COEF = 0.0001;
+
     public static final double NUDGE_MAGNITUDE = 0.001;
 
+    public static final double HISTORY_ANGLE_TOLERANCE = Math.toRadians(1.0);
+
+    public static final int PLAN_CACHE_SIZE = 4096;
+    public static final int AREA_PLANNING_LIMIT = 1000;
+    public static final int AREA_PLANNING_DECOMPOSITIONS = 16;
+
+    public static int THREADS = Runtime.getRuntime().availableProcessors();
+    public static boolean PARALLEL_MICROSTEP = false;
+    public static boolean DETERMINISTIC_MICROSTEP = false;
+    public static boolean VECTOR_KERNEL = false;
+    public static String INTEGRATOR = "euler";
+    public static boolean ADAPTIVE_MICROSTEP = false;
+    public static boolean PARALLEL_PLANNING = false;
+    public static boolean PATH_SMOOTHING = false;
+    public static boolean HIERARCHICAL_PLANNING = false;
+
     public static void init(Config config)
     {
+        THREADS = config.getIntValue("traffic.threads", THREADS);
+        PARALLEL_MICROSTEP =
+            config.getBooleanValue("traffic.microstep.parallel", PARALLEL_MICROSTEP);
+        DETERMINISTIC_MICROSTEP = config.getBooleanValue(
+            "traffic.microstep.deterministic", DETERMINISTIC_MICROSTEP);
+        VECTOR_KERNEL =
+            config.getBooleanValue("traffic.kernel.vector", VECTOR_KERNEL);
+        INTEGRATOR = config.getValue("traffic.integrator", INTEGRATOR);
+        ADAPTIVE_MICROSTEP =
+            config.getBooleanValue("traffic.microstep.adaptive", ADAPTIVE_MICROSTEP);
+        PARALLEL_PLANNING =
+            config.getBooleanValue("traffic.plan.parallel", PARALLEL_PLANNING);
+        PATH_SMOOTHING =
+            config.getBooleanValue("traffic.path.smoothing", PATH_SMOOTHING);
+        HIERARCHICAL_PLANNING = config.getBooleanValue(
+            "traffic.plan.hierarchical", HIERARCHICAL_PLANNING);
     }
 
     public static double getColocatedAgentNudge()
@@ -299,6 +299,30 @@ public class GeomUtil
         return t1*t2 < 0.0 && t3*t4 < 0.0;
     }
 
+    //  parameter on the first line of its intersection with the second line,
+    //  same as Line2D.getIntersection
+    public static double computeIntersection(
+        double ox1, double oy1, double dx1, double dy1,
+        double ox2, double oy2, double dx2, double dy2)
+    {
+        double cross = dx1*dy2 - dy1*dx2;
+        if (GeometryTools2D.nearlyZero(cross)) return Double.NaN;
+
+        return ((ox2-ox1)*dy2 - (oy2-oy1)*dx2) / cross;
+    }
+
+    //  with endpoints, same as GeometryTools2D.getSegmentIntersectionPoint
+    public static boolean touchSegments(
+        double ox1, double oy1, double dx1, double dy1,
+        double ox2, double oy2, double dx2, double dy2)
+    {
+        double t1 = computeIntersection(ox1, oy1, dx1, dy1, ox2, oy2, dx2, dy2);
+        if (!(0.0 <= t1 && t1 <= 1.0)) return false;
+
+        double t2 = computeIntersection(ox2, oy2, dx2, dy2, ox1, oy1, dx1, dy1);
+        return 0.0 <= t2 && t2 <= 1.0;
+    }
+
     public static List<Point2D> toUnique(List<Point2D> ps)
     {
         List<Point2D> ret = new LinkedList<>();
@@ -0,0 +1,89 @@
+package traffic.util;
+
+import java.util.*;
+
+//  open-addressing hash map from int keys to non-negative int values
+//  missing keys map to -1
+public class IntIntMap
+{
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    public IntIntMap()
+    {
+        this.allocate(16);
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    public int get(int key)
+    {
+        int mask = this.keys.length-1;
+        for (int i=hash(key)&mask; this.used[i]; i=(i+1)&mask)
+        {
+            if (this.keys[i] == key) return this.values[i];
+        }
+
+        return -1;
+    }
+
+    public void put(int key, int value)
+    {
+        if (2*(this.size+1) > this.keys.length) this.rehash(this.keys.length*2);
+
+        int mask = this.keys.length-1;
+        int i = hash(key)&mask;
+        for (; this.used[i]; i=(i+1)&mask)
+        {
+            if (this.keys[i] != key) continue;
+
+            this.values[i] = value;
+            return;
+        }
+
+        this.keys[i] = key;
+        this.values[i] = value;
+        this.used[i] = true;
+        this.size++;
+    }
+
+    public void clear()
+    {
+        if (this.size == 0) return;
+
+        Arrays.fill(this.used, false);
+        this.size = 0;
+    }
+
+    private void rehash(int capacity)
+    {
+        int[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        boolean[] oldUsed = this.used;
+
+        this.allocate(capacity);
+        for (int i=0; i<oldKeys.length; ++i)
+        {
+            if (oldUsed[i]) this.put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.used = new boolean[capacity];
+        this.size = 0;
+    }
+
+    private static int hash(int key)
+    {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,66 @@
+package traffic.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+public class WorkerPool
+{
+    private static final int SPLITS_PER_THREAD = 8;
+
+    private static ForkJoinPool pool = null;
+
+    public static synchronized ForkJoinPool get()
+    {
+        if (pool == null) pool = new ForkJoinPool(Environment.THREADS);
+        return pool;
+    }
+
+    //  runs body for every index in [0, n) and waits for all of them
+    //  called from a task of the pool, the range is split within that task
+    //  so that nested calls are work-stolen instead of blocking a worker
+    public static void forEach(int n, IntConsumer body)
+    {
+        if (n <= 0) return;
+
+        int grain = Math.max(1, n / (Environment.THREADS*SPLITS_PER_THREAD));
+        RangeTask task = new RangeTask(0, n, grain, body);
+
+        if (ForkJoinTask.getPool() == get()) task.invoke();
+        else get().invoke(task);
+    }
+
+    private static class RangeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+        private int grain;
+        private IntConsumer body;
+
+        public RangeTask(int from, int to, int grain, IntConsumer body)
+        {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to-this.from <= this.grain)
+            {
+                for (int i=this.from; i<this.to; ++i) this.body.accept(i);
+                return;
+            }
+
+            int mid = (this.from+this.to) >>> 1;
+            invokeAll(
+                new RangeTask(this.from, mid, this.grain, this.body),
+                new RangeTask(mid, this.to, this.grain, this.body));
+        }
+    }
+}
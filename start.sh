@@ -14,5 +14,11 @@ CNF_DIR="$PWD/cnf"
 CP=`find $LIB_DIR -name '*.jar' | awk -v ORS=':' '{print}'`
 CP=$BLD_DIR:$SERVER_DIR/supplement:$CP
 
-java -classpath $CP. -Dlog4j.log.dir=$LOG_DIR $LAUNCHER \
+OPTS=""
+if java --list-modules 2>/dev/null | grep -q '^jdk.incubator.vector'
+then
+    OPTS="--add-modules jdk.incubator.vector"
+fi
+
+java $OPTS -classpath $CP. -Dlog4j.log.dir=$LOG_DIR $LAUNCHER \
     $SIMULATOR -c $CNF_DIR/traffic.cfg 2>&1 | tee $LOG_DIR/traffic-out.log